@@ -1,3 +1,6 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
 /**
@@ -19,26 +22,129 @@ import java.lang.reflect.Method;
  */
 public class ACWrapper<T> implements AutoCloseable {
 
+    /** クラスごとのclose()メソッド。クラスごとに一度だけ検索し、以降は再利用する */
+    private static final ClassValue<Closer> closers = new ClassValue<Closer>() {
+        @Override
+        protected Closer computeValue(Class<?> type) {
+            return Closer.of(type);
+        }
+    };
+
     private final T resource;
-    private final Method closeMethod;
+    private final Closer closer;
+    /** 追跡用の記録。{@link ACWrapperTracker}が無効の場合はnull */
+    private final ACWrapperTracker.Tracking tracking;
 
     public ACWrapper(T resource) {
+        this(resource, true);
+    }
 
-        try {
-            closeMethod = resource.getClass().getMethod("close");
-        } catch (Exception e) {
-            throw new IllegalArgumentException("close-method not found.", e);
+    /**
+     * @param track falseの場合、{@link ACWrapperTracker}で追跡しない
+     */
+    ACWrapper(T resource, boolean track) {
+
+        Closer c = (resource == null) ? null : closers.get(resource.getClass());
+        if (c == null) {
+            // エラー時のみ、検索をやり直して元の例外を原因に設定する
+            try {
+                resource.getClass().getMethod("close");
+            } catch (Exception e) {
+                throw new IllegalArgumentException("close-method not found.", e);
+            }
+            throw new IllegalArgumentException("close-method not found.");
         }
+        this.closer = c;
         this.resource = resource;
+        this.tracking = track ? ACWrapperTracker.track(this, resource
+                .getClass()) : null;
     }
 
     @Override
     public void close() throws Exception {
-        closeMethod.invoke(resource);
+        try {
+            closer.close(resource);
+        } finally {
+            untrack();
+        }
     }
 
     public T getResource() {
         return resource;
     }
 
+    /**
+     * {@link ACWrapperTracker}に、リソースの利用が終わったことを通知する。
+     * close()をオーバーライドするサブクラスは、close()時にこれを呼ぶこと。
+     */
+    void untrack() {
+        if (tracking != null) {
+            tracking.closed();
+        }
+    }
+
+    // private methods -----------------------------------------
+
+    /**
+     * あるクラスのclose()メソッドの呼び出し方。<br>
+     * 通常はMethodHandleで直接呼び出す。publicでないクラスのメソッドなど、MethodHandleを
+     * 取得できない場合は、Method#invokeで呼び出す。
+     */
+    private static final class Closer {
+        private final MethodHandle handle;
+        private final Method method;
+
+        private Closer(MethodHandle handle, Method method) {
+            this.handle = handle;
+            this.method = method;
+        }
+
+        /** close()メソッドがなければnullを返す */
+        static Closer of(Class<?> type) {
+            Method m;
+            try {
+                m = type.getMethod("close");
+            } catch (NoSuchMethodException e) {
+                return null;
+            } catch (SecurityException e) {
+                return null;
+            }
+            try {
+                MethodHandle h = MethodHandles.publicLookup().unreflect(m);
+                // 戻り値は捨てて、(Object)voidの形で呼べるようにする
+                return new Closer(h.asType(h.type().changeParameterType(0,
+                        Object.class).changeReturnType(void.class)), m);
+            } catch (IllegalAccessException e) {
+                return new Closer(null, m);
+            }
+        }
+
+        void close(Object resource) throws Exception {
+            if (handle != null) {
+                try {
+                    handle.invokeExact(resource);
+                } catch (Exception e) {
+                    throw e;
+                } catch (Error e) {
+                    throw e;
+                } catch (Throwable t) {
+                    throw new RuntimeException(t.getMessage(), t);
+                }
+                return;
+            }
+            try {
+                method.invoke(resource);
+            } catch (InvocationTargetException e) {
+                // MethodHandleで呼び出した場合と同じく、close()が投げた例外をそのまま投げる
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,363 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link ACWrapper}のプール版。<br>
+ * 生成コストの高いリソースオブジェクト(古いコネクション相当のクラスやセッション等)をプールし、
+ * "try-with-resources"の終了時にリソースのclose()を呼ぶ代わりに、プールへ返却する。
+ * 
+ * {@code
+ *     static final ACWrapperPool<OldResource> pool = new ACWrapperPool<>(
+ *             new ACWrapperPool.Factory<OldResource>() {
+ *                 public OldResource create() throws Exception { return new OldResource(param); }
+ *                 public boolean validate(OldResource r) { return r.isAlive(); }
+ *             }, 10, 60000, 5000);
+ *     ...
+ *     try (ACWrapperPool.Lease<OldResource> lease = pool.borrow()) {
+ *         OldResource resource = lease.getResource();
+ *
+ *         // OldResourceを利用した処理…
+ *     }
+ * }
+ * 
+ * プールするリソースの数(貸出中と待機中の合計)はmaxSize以下に制限され、上限に達している場合、
+ * borrow()は返却を最大borrowTimeoutMillis待つ。待機中のリソースは貸出時にvalidate()で検査し、
+ * 不正なものや、maxIdleMillis以上使われていないものはclose()して破棄する。
+ * 待機中のリソースの破棄は貸出・返却時に行うので、定期的に破棄したい場合は{@link #evictIdle()}を呼ぶこと。
+ */
+public class ACWrapperPool<T> implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(ACWrapperPool.class
+            .getName());
+
+    /**
+     * プールするリソースの生成・検査を行うインターフェース
+     */
+    public interface Factory<T> {
+        /** リソースを生成する。生成されたリソースはclose()メソッドを持つ必要がある */
+        T create() throws Exception;
+
+        /** 待機中のリソースが、貸し出し可能な状態であればtrueを返す */
+        boolean validate(T resource);
+    }
+
+    /**
+     * 貸し出したリソース。close()すると、リソースをプールへ返却する。
+     */
+    public static final class Lease<T> extends ACWrapper<T> {
+        private final ACWrapperPool<T> pool;
+        private boolean returned = false;
+        private boolean broken = false;
+
+        private Lease(ACWrapperPool<T> pool, T resource) {
+            super(resource);
+            this.pool = pool;
+        }
+
+        /**
+         * リソースが使用できない状態になったことを通知する。close()時に、返却せず破棄する。
+         */
+        public void invalidate() {
+            broken = true;
+        }
+
+        /**
+         * リソースをプールへ返却する。2回目以降の呼び出しは何もしない。
+         */
+        @Override
+        public void close() {
+            if (returned) {
+                return;
+            }
+            returned = true;
+            untrack();
+            pool.giveBack(getResource(), broken);
+        }
+    }
+
+    /** 待機中のリソースと、返却された時刻(System.nanoTime()基準) */
+    private static final class Idle<T> {
+        private final T resource;
+        private final long returnedAt;
+
+        Idle(T resource, long returnedAt) {
+            this.resource = resource;
+            this.returnedAt = returnedAt;
+        }
+    }
+
+    private final Factory<T> factory;
+    private final int maxSize;
+    private final long maxIdleNanos;
+    private final long borrowTimeoutNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition returned = lock.newCondition();
+    /** 待機中のリソース。先頭が最も新しく返却されたもの */
+    private final ArrayDeque<Idle<T>> idle = new ArrayDeque<Idle<T>>();
+    /** 貸出中と待機中のリソースの合計(生成中のものを含む) */
+    private int total = 0;
+    private boolean closed = false;
+
+    /**
+     * @param factory リソースの生成・検査を行うFactory
+     * @param maxSize プールするリソースの最大数(貸出中と待機中の合計)
+     * @param maxIdleMillis 待機中のリソースを破棄するまでの時間(ミリ秒)
+     * @param borrowTimeoutMillis 上限に達している場合に、返却を待つ最大時間(ミリ秒)
+     */
+    public ACWrapperPool(Factory<T> factory, int maxSize, long maxIdleMillis,
+            long borrowTimeoutMillis) {
+        if (factory == null) {
+            throw new IllegalArgumentException("factory is null.");
+        }
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Bad max size : " + maxSize);
+        }
+        if (maxIdleMillis <= 0) {
+            throw new IllegalArgumentException("Bad max idle time : "
+                    + maxIdleMillis);
+        }
+        if (borrowTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Bad borrow timeout : "
+                    + borrowTimeoutMillis);
+        }
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.maxIdleNanos = TimeUnit.MILLISECONDS.toNanos(maxIdleMillis);
+        this.borrowTimeoutNanos = TimeUnit.MILLISECONDS
+                .toNanos(borrowTimeoutMillis);
+    }
+
+    /**
+     * リソースを借りる。待機中のリソースがなければ生成する。
+     * 
+     * @return 貸し出したリソース。"try-with-resources"で利用すること
+     * @throws TimeoutException 上限に達したまま、borrowTimeoutMillis以内に返却されなかった場合
+     * @throws InterruptedException 返却待ちの間に割り込まれた場合
+     * @throws RuntimeException リソースの生成に失敗した場合
+     */
+    public Lease<T> borrow() throws TimeoutException, InterruptedException {
+        long deadline = System.nanoTime() + borrowTimeoutNanos;
+        while (true) {
+            T candidate = null;
+            boolean create = false;
+            List<T> expired = null;
+            lock.lock();
+            try {
+                while (true) {
+                    if (closed) {
+                        throw new IllegalStateException("pool is closed.");
+                    }
+                    // 期限切れのものを先に取り除き、残った中で最も新しく返却されたものを貸し出す
+                    expired = removeExpired(System.nanoTime(), expired);
+                    if (!idle.isEmpty()) {
+                        candidate = idle.pollFirst().resource;
+                        break;
+                    }
+                    if (total < maxSize) {
+                        total++;
+                        create = true;
+                        break;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new TimeoutException("no resource returned in "
+                                + TimeUnit.NANOSECONDS.toMillis(borrowTimeoutNanos)
+                                + "ms.");
+                    }
+                    returned.awaitNanos(remaining);
+                }
+            } finally {
+                lock.unlock();
+                destroyAll(expired);
+            }
+
+            if (create) {
+                T resource = createResource();
+                try {
+                    return new Lease<T>(this, resource);
+                } catch (RuntimeException e) {
+                    // close()メソッドがないリソースなど、貸し出せないものは破棄して空きを戻す
+                    discard(resource);
+                    throw e;
+                }
+            }
+            if (isValid(candidate)) {
+                return new Lease<T>(this, candidate);
+            }
+            // 不正なリソースは破棄して、もう一度借りる
+            discard(candidate);
+        }
+    }
+
+    /**
+     * maxIdleMillis以上使われていない待機中のリソースを破棄する。
+     */
+    public void evictIdle() {
+        List<T> expired;
+        lock.lock();
+        try {
+            expired = removeExpired(System.nanoTime(), null);
+        } finally {
+            lock.unlock();
+        }
+        destroyAll(expired);
+    }
+
+    /** 待機中のリソースの数 */
+    public int getIdleCount() {
+        lock.lock();
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** 貸出中のリソースの数 */
+    public int getBorrowedCount() {
+        lock.lock();
+        try {
+            return total - idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 待機中のリソースを全て破棄する。貸出中のリソースは、返却時に破棄される。
+     */
+    @Override
+    public void close() {
+        List<T> all = new ArrayList<T>();
+        lock.lock();
+        try {
+            closed = true;
+            for (Idle<T> i : idle) {
+                all.add(i.resource);
+            }
+            total -= idle.size();
+            idle.clear();
+            returned.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        destroyAll(all);
+    }
+
+    // private methods -----------------------------------------
+
+    private T createResource() {
+        boolean created = false;
+        try {
+            T resource = factory.create();
+            if (resource == null) {
+                throw new IllegalStateException("factory created null.");
+            }
+            created = true;
+            return resource;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e.getMessage(), e);
+        } finally {
+            if (!created) {
+                release();
+            }
+        }
+    }
+
+    private boolean isValid(T resource) {
+        try {
+            return factory.validate(resource);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "validate failed.", e);
+            return false;
+        }
+    }
+
+    private void giveBack(T resource, boolean broken) {
+        List<T> expired = null;
+        boolean pooled = false;
+        lock.lock();
+        try {
+            if (!broken && !closed) {
+                idle.addFirst(new Idle<T>(resource, System.nanoTime()));
+                returned.signal();
+                pooled = true;
+                expired = removeExpired(System.nanoTime(), null);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!pooled) {
+            discard(resource);
+        }
+        destroyAll(expired);
+    }
+
+    /** リソースを破棄し、空きを1つ増やす */
+    private void discard(T resource) {
+        release();
+        destroy(resource);
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            total--;
+            returned.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * ロックを取得した状態で呼ぶこと。期限切れのリソースをidleから取り除き、expiredに追加して返す
+     * (expiredがnullで、期限切れのものがあれば新しいListを返す)
+     */
+    private List<T> removeExpired(long now, List<T> expired) {
+        boolean removed = false;
+        for (Iterator<Idle<T>> it = idle.descendingIterator(); it.hasNext();) {
+            Idle<T> i = it.next();
+            if (now - i.returnedAt < maxIdleNanos) {
+                break; // これより先頭は、より新しく返却されたもの
+            }
+            it.remove();
+            total--;
+            if (expired == null) {
+                expired = new ArrayList<T>();
+            }
+            expired.add(i.resource);
+            removed = true;
+        }
+        if (removed) {
+            returned.signalAll();
+        }
+        return expired;
+    }
+
+    private void destroyAll(List<T> resources) {
+        if (resources != null) {
+            for (T r : resources) {
+                destroy(r);
+            }
+        }
+    }
+
+    private static void destroy(Object resource) {
+        try {
+            new ACWrapper<Object>(resource, false).close();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "close failed.", e);
+        }
+    }
+}
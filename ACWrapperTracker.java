@@ -0,0 +1,218 @@
+import java.lang.ref.Cleaner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link ACWrapper}で管理されるリソースの、リーク(close()されないまま破棄されたもの)と保持時間を追跡するクラス。<br>
+ * "try-with-resources"を使わずにACWrapperを生成し、close()し忘れたリソースを見つけるために利用する。
+ * 有効にすると、ACWrapperの生成ごとに{@link Cleaner}へ登録し、以下を記録する。
+ * <ul>
+ * <li>close()されていないACWrapperの数</li>
+ * <li>close()されないままGCされたACWrapperの数。リークを検出するとWARNINGでログ出力する</li>
+ * <li>リソースのクラスごとの、生成からclose()までの時間の分布</li>
+ * </ul>
+ * 生成箇所のスタックトレースは、sampleRateの割合で抽出したACWrapperについてのみ取得し、リークのログに出力する。<br>
+ * 無効の場合(既定)、ACWrapperの生成・close()ごとのコストは、volatile変数の読み込み1回とnull判定のみ。
+ * 
+ * {@code
+ *     ACWrapperTracker.enable(0.01); // 1%の生成箇所を記録
+ *     ...
+ *     for (String line : ACWrapperTracker.dump()) { System.out.println(line); }
+ * }
+ */
+public class ACWrapperTracker {
+
+    private static final Logger logger = Logger.getLogger(ACWrapperTracker.class
+            .getName());
+
+    private static volatile boolean enabled = false;
+    private static volatile double sampleRate = 0.0;
+    /** 最初に有効にした時に生成する。Cleanerはスレッドを1つ使うため */
+    private static volatile Cleaner cleaner;
+
+    private static final AtomicLong openCount = new AtomicLong();
+    private static final AtomicLong leakCount = new AtomicLong();
+    /** リソースのクラス名ごとの記録 */
+    private static final ConcurrentMap<String, ClassStats> stats =
+            new ConcurrentHashMap<String, ClassStats>();
+
+    /** リソースのクラスごとの記録 */
+    private static final class ClassStats {
+        private final AtomicLong leaks = new AtomicLong();
+        private final LatencyHistogram holdTime = new LatencyHistogram();
+    }
+
+    private ACWrapperTracker() {
+    }
+
+    /**
+     * 追跡を開始する。既に有効な場合は、sampleRateのみ変更する。
+     * 
+     * @param rate 生成箇所のスタックトレースを取得する割合(0～1)。0なら取得しない
+     */
+    public static synchronized void enable(double rate) {
+        if (rate < 0.0 || rate > 1.0) {
+            throw new IllegalArgumentException("Bad sample rate : " + rate);
+        }
+        if (cleaner == null) {
+            cleaner = Cleaner.create();
+        }
+        sampleRate = rate;
+        enabled = true;
+    }
+
+    /**
+     * 追跡を終了する。既に追跡中のACWrapperは、引き続き記録される。
+     */
+    public static synchronized void disable() {
+        enabled = false;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** 追跡中で、close()されていないACWrapperの数 */
+    public static long getOpenCount() {
+        return openCount.get();
+    }
+
+    /** close()されないままGCされたACWrapperの数 */
+    public static long getLeakCount() {
+        return leakCount.get();
+    }
+
+    /**
+     * @param resourceClass リソースのクラス
+     * @return 生成からclose()までの時間(ナノ秒)の分布。記録がない場合はnull
+     */
+    public static LatencyHistogram getHoldTimeHistogram(Class<?> resourceClass) {
+        ClassStats s = stats.get(resourceClass.getName());
+        return (s == null) ? null : s.holdTime;
+    }
+
+    /**
+     * @return リソースのクラスごとに1行：close()回数、リーク数、保持時間のp50/p99(マイクロ秒)
+     */
+    public static String[] dump() {
+        List<String> lines = new ArrayList<String>();
+        for (Map.Entry<String, ClassStats> e : new TreeMap<String, ClassStats>(
+                stats).entrySet()) {
+            ClassStats s = e.getValue();
+            lines.add(String.format(
+                    "%s closed=%d leaked=%d hold(p50/p99)=%d/%dus", e.getKey(),
+                    s.holdTime.getCount(), s.leaks.get(),
+                    s.holdTime.getPercentile(50) / 1000,
+                    s.holdTime.getPercentile(99) / 1000));
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    /** 記録を全て破棄する。close()されていないACWrapperの数は破棄しない */
+    public static void reset() {
+        leakCount.set(0L);
+        stats.clear();
+    }
+
+    /**
+     * ACWrapperの生成時に呼ばれる。
+     * 
+     * @return 追跡用の記録。無効の場合はnull
+     */
+    static Tracking track(ACWrapper<?> wrapper, Class<?> resourceClass) {
+        if (!enabled) {
+            return null;
+        }
+        double rate = sampleRate;
+        Throwable site = (rate > 0.0 && ThreadLocalRandom.current()
+                .nextDouble() < rate) ? new Throwable("ACWrapper created here")
+                : null;
+        Tracking t = new Tracking(wrapper, cleaner, resourceClass.getName(),
+                site);
+        openCount.incrementAndGet();
+        return t;
+    }
+
+    // private methods -----------------------------------------
+
+    private static ClassStats statsOf(String className) {
+        ClassStats s = stats.get(className);
+        if (s == null) {
+            ClassStats newS = new ClassStats();
+            s = stats.putIfAbsent(className, newS);
+            if (s == null) {
+                s = newS;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * 追跡中の1つのACWrapperの記録。ACWrapperが保持する。
+     */
+    static final class Tracking {
+        private final State state;
+        private final Cleaner.Cleanable cleanable;
+
+        private Tracking(ACWrapper<?> wrapper, Cleaner cleaner,
+                String className, Throwable site) {
+            this.state = new State(className, site);
+            this.cleanable = cleaner.register(wrapper, state);
+        }
+
+        /** ACWrapperのclose()時に呼ばれる */
+        void closed() {
+            state.closed();
+            cleanable.clean(); // Cleanerへの登録を解除する
+        }
+    }
+
+    /**
+     * 追跡の状態。<br>
+     * Cleanerの処理として実行されるため、ACWrapperやTrackingを参照してはならない。
+     */
+    private static final class State implements Runnable {
+        private final String className;
+        private final long start = System.nanoTime();
+        private final Throwable site;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private State(String className, Throwable site) {
+            this.className = className;
+            this.site = site;
+        }
+
+        void closed() {
+            if (done.compareAndSet(false, true)) {
+                openCount.decrementAndGet();
+                statsOf(className).holdTime.record(System.nanoTime() - start);
+            }
+        }
+
+        /** close()されないままGCされた時に、Cleanerのスレッドで呼ばれる */
+        @Override
+        public void run() {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            openCount.decrementAndGet();
+            leakCount.incrementAndGet();
+            statsOf(className).leaks.incrementAndGet();
+            if (site != null) {
+                logger.log(Level.WARNING, "resource leaked: " + className, site);
+            } else {
+                logger.warning("resource leaked: " + className
+                        + " (creation site not sampled)");
+            }
+        }
+    }
+}
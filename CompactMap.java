@@ -0,0 +1,256 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * 起動時に一度だけ作成し、以降は参照のみ行う定数表のための、変更不可のMap。<br>
+ * キーと値を1つの配列に交互に格納するオープンアドレス法(線形探索)のハッシュ表で、
+ * HashMapのようにエントリごとのオブジェクトを持たないため、メモリ使用量が小さい。
+ * キーのハッシュ値も別の配列に保持し、衝突したキーのequals()を呼ばずに読み飛ばす。<br>
+ * キーにnullは使用できない。値はnullでもよい。変更操作はUnsupportedOperationExceptionとなる。
+ * 
+ * <pre>
+ * {@code
+ * static final Map<String, Integer> CODES = CompactMap.builder(String.class, Integer.class, 3)
+ *         .put("A", 1).put("B", 2).put("C", 3).build();
+ * }
+ * </pre>
+ * 
+ * @see IntCompactMap
+ * @see LongCompactMap
+ * @see MiniUtils#buildCompactMap(Object[][], Class, Class)
+ */
+public final class CompactMap<K, V> extends AbstractMap<K, V> {
+
+    /** 表の使用率の上限(%)。これを超えないよう表の大きさを決める */
+    static final int LOAD_FACTOR_PERCENT = 60;
+
+    /** nullの値を表す。空きスロットと区別するため */
+    private static final Object NULL_VALUE = new Object();
+
+    /** [キー, 値, キー, 値, ...]。キーがnullのスロットは空き */
+    private final Object[] table;
+    /** 各スロットのキーのハッシュ値 */
+    private final int[] hashes;
+    private final int mask;
+    private final int shift;
+    private final int size;
+
+    private Set<Map.Entry<K, V>> entrySet;
+
+    /**
+     * CompactMapのビルダー。同じキーを複数回putした場合は、最後の値が有効になる。
+     */
+    public static final class Builder<K, V> {
+        private final Class<K> keyType;
+        private final Class<V> valueType;
+        private Object[] table;
+        private int[] hashes;
+        private int size = 0;
+
+        private Builder(Class<K> keyType, Class<V> valueType, int expectedSize) {
+            if (keyType == null || valueType == null) {
+                throw new IllegalArgumentException("type is null.");
+            }
+            if (expectedSize < 0) {
+                throw new IllegalArgumentException("Bad expected size : "
+                        + expectedSize);
+            }
+            this.keyType = keyType;
+            this.valueType = valueType;
+            int n = tableSizeFor(expectedSize);
+            this.table = new Object[2 * n];
+            this.hashes = new int[n];
+        }
+
+        /**
+         * @exception ClassCastException keyType, valueTypeと異なるキー、値を指定した場合に発生する。
+         */
+        public Builder<K, V> put(K key, V value) {
+            if (key == null) {
+                throw new IllegalArgumentException("key is null.");
+            }
+            keyType.cast(key);
+            valueType.cast(value);
+            if ((size + 1) * 100 > hashes.length * LOAD_FACTOR_PERCENT) {
+                rehash(2 * hashes.length);
+            }
+            if (insert(table, hashes, key, (value == null) ? NULL_VALUE
+                    : value)) {
+                size++;
+            }
+            return this;
+        }
+
+        public CompactMap<K, V> build() {
+            // 予想より少なかった場合は、必要な大きさに詰める
+            int n = tableSizeFor(size);
+            if (n < hashes.length) {
+                rehash(n);
+            }
+            return new CompactMap<K, V>(table.clone(), hashes.clone(), size);
+        }
+
+        private void rehash(int n) {
+            Object[] nt = new Object[2 * n];
+            int[] nh = new int[n];
+            for (int i = 0; i < table.length; i += 2) {
+                if (table[i] != null) {
+                    insert(nt, nh, table[i], table[i + 1]);
+                }
+            }
+            table = nt;
+            hashes = nh;
+        }
+    }
+
+    /**
+     * @param keyType Mapのキー項目の型
+     * @param valueType Mapの値項目の型
+     * @param expectedSize 予想されるエントリ数。この数までは表の拡張を行わない
+     */
+    public static <K, V> Builder<K, V> builder(Class<K> keyType,
+            Class<V> valueType, int expectedSize) {
+        return new Builder<K, V>(keyType, valueType, expectedSize);
+    }
+
+    private CompactMap(Object[] table, int[] hashes, int size) {
+        this.table = table;
+        this.hashes = hashes;
+        this.mask = hashes.length - 1;
+        this.shift = 32 - Integer.numberOfTrailingZeros(hashes.length);
+        this.size = size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public V get(Object key) {
+        int i = indexOf(key);
+        return (i < 0) ? null : valueAt(i);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es = entrySet;
+        if (es == null) {
+            es = new AbstractSet<Map.Entry<K, V>>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+            entrySet = es;
+        }
+        return es;
+    }
+
+    // private methods -----------------------------------------
+
+    /** 要素数nを格納できるスロット数(2のべき乗)を返す */
+    static int tableSizeFor(int n) {
+        long slots = Math.max(2L, (long) n * 100 / LOAD_FACTOR_PERCENT + 1);
+        if (slots > (1 << 29)) {
+            throw new IllegalArgumentException("Too many entries : " + n);
+        }
+        return Integer.highestOneBit((int) slots - 1) << 1;
+    }
+
+    /** キーのハッシュ値から、スロット番号を求める(フィボナッチハッシュ) */
+    private static int slotOf(int hash, int shift) {
+        return (hash * 0x9E3779B9) >>> shift;
+    }
+
+    private int indexOf(Object key) {
+        if (key == null) {
+            return -1;
+        }
+        int h = key.hashCode();
+        Object[] t = table;
+        for (int slot = slotOf(h, shift);; slot = (slot + 1) & mask) {
+            Object k = t[2 * slot];
+            if (k == null) {
+                return -1;
+            }
+            if (hashes[slot] == h && (k == key || k.equals(key))) {
+                return 2 * slot;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int i) {
+        Object v = table[i + 1];
+        return (v == NULL_VALUE) ? null : (V) v;
+    }
+
+    /** キーが既にあれば値を置き換えてfalse、なければ追加してtrueを返す */
+    private static boolean insert(Object[] t, int[] hashes, Object key,
+            Object value) {
+        int h = key.hashCode();
+        int m = hashes.length - 1;
+        int sh = 32 - Integer.numberOfTrailingZeros(hashes.length);
+        for (int slot = slotOf(h, sh);; slot = (slot + 1) & m) {
+            Object k = t[2 * slot];
+            if (k == null) {
+                t[2 * slot] = key;
+                t[2 * slot + 1] = value;
+                hashes[slot] = h;
+                return true;
+            }
+            if (hashes[slot] == h && k.equals(key)) {
+                t[2 * slot + 1] = value;
+                return false;
+            }
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        private int next = advance(0);
+
+        private int advance(int i) {
+            while (i < table.length && table[i] == null) {
+                i += 2;
+            }
+            return i;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < table.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (next >= table.length) {
+                throw new NoSuchElementException();
+            }
+            int i = next;
+            next = advance(i + 2);
+            return new AbstractMap.SimpleImmutableEntry<K, V>((K) table[i],
+                    valueAt(i));
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import java.util.Arrays;
+
+/**
+ * キーがintの、変更不可の{@link CompactMap}。<br>
+ * キーをint配列のまま保持するため、キーのボクシングが発生しない。
+ * 
+ * <pre>
+ * {@code
+ * static final IntCompactMap<String> NAMES = IntCompactMap.builder(String.class, 2)
+ *         .put(1, "one").put(2, "two").build();
+ * }
+ * </pre>
+ */
+public final class IntCompactMap<V> extends PrimitiveCompactMap<V> {
+
+    private final int[] keys;
+
+    /**
+     * IntCompactMapのビルダー。同じキーを複数回putした場合は、最後の値が有効になる。
+     */
+    public static final class Builder<V> extends
+            PrimitiveCompactMap.AbstractBuilder<V, IntCompactMap<V>> {
+
+        private Builder(Class<V> valueType, int expectedSize) {
+            super(valueType, expectedSize);
+        }
+
+        /**
+         * @exception ClassCastException valueTypeと異なる値を指定した場合に発生する。
+         */
+        public Builder<V> put(int key, V value) {
+            add(key, value);
+            return this;
+        }
+
+        public IntCompactMap<V> build() {
+            return finish();
+        }
+
+        @Override
+        IntCompactMap<V> newTable(int n) {
+            return new IntCompactMap<V>(new int[n], new Object[n], 0);
+        }
+
+        @Override
+        IntCompactMap<V> copyOf(IntCompactMap<V> table, int size) {
+            return new IntCompactMap<V>(table.keys.clone(), table.values
+                    .clone(), size);
+        }
+    }
+
+    /**
+     * @param valueType Mapの値項目の型
+     * @param expectedSize 予想されるエントリ数。この数までは表の拡張を行わない
+     */
+    public static <V> Builder<V> builder(Class<V> valueType, int expectedSize) {
+        return new Builder<V>(valueType, expectedSize);
+    }
+
+    private IntCompactMap(int[] keys, Object[] values, int size) {
+        super(values, size);
+        this.keys = keys;
+    }
+
+    /** keyに対応する値を返す。キーがない場合はnullを返す */
+    public V get(int key) {
+        return getOrDefault(key, null);
+    }
+
+    /** keyに対応する値を返す。キーがない場合はdefaultValueを返す */
+    public V getOrDefault(int key, V defaultValue) {
+        int slot = find(key);
+        return (slot < 0) ? defaultValue : valueAt(slot);
+    }
+
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    /** 全てのキーを昇順で返す */
+    public int[] keys() {
+        int[] res = new int[size()];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                res[n++] = keys[i];
+            }
+        }
+        Arrays.sort(res);
+        return res;
+    }
+
+    @Override
+    long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    @Override
+    void setKeyAt(int slot, long key) {
+        keys[slot] = (int) key;
+    }
+
+    /** フィボナッチハッシュ */
+    @Override
+    int slotOf(long key) {
+        return ((int) key * 0x9E3779B9) >>> shift;
+    }
+}
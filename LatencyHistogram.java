@@ -0,0 +1,88 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 処理時間(ナノ秒)の分布を記録する、軽量なヒストグラム。<br>
+ * 2のべき乗ごとの区間をさらに{@value #SUB_BUCKETS}分割したバケットに件数を数えるだけなので、
+ * 記録はロックなし・オブジェクト生成なしで行えます。パーセンタイルの誤差は最大で約12%です。
+ */
+public class LatencyHistogram {
+
+    /** 2のべき乗の区間あたりのバケット数 */
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BITS = 3;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+
+    /**
+     * 処理時間を1件記録します。
+     *
+     * @param nanos 処理時間(ナノ秒)。負の値は0として扱う
+     */
+    public void record(long nanos) {
+        buckets.incrementAndGet(indexOf(Math.max(nanos, 0L)));
+    }
+
+    /** 記録された件数 */
+    public long getCount() {
+        long c = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            c += buckets.get(i);
+        }
+        return c;
+    }
+
+    /**
+     * 指定したパーセンタイルの処理時間を返します。記録がない場合は0を返します。
+     *
+     * @param percentile パーセンタイル(0～100)
+     * @return 処理時間(ナノ秒)。該当するバケットの上限値
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[buckets.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0L;
+        }
+        long rank = (long) Math.ceil(total * Math.min(100.0, percentile) / 100.0);
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= Math.max(rank, 1L)) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(snapshot.length - 1);
+    }
+
+    /** 記録を全て破棄します */
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0L);
+        }
+    }
+
+    // private methods -----------------------------------------
+
+    private static int indexOf(long v) {
+        if (v < SUB_BUCKETS) {
+            return (int) v;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exp = index / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        long lower = (1L << exp) + (sub << (exp - SUB_BITS));
+        return lower + (1L << (exp - SUB_BITS)) - 1;
+    }
+}
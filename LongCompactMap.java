@@ -0,0 +1,108 @@
+import java.util.Arrays;
+
+/**
+ * キーがlongの、変更不可の{@link CompactMap}。<br>
+ * キーをlong配列のまま保持するため、キーのボクシングが発生しない。
+ * 
+ * <pre>
+ * {@code
+ * static final LongCompactMap<String> NAMES = LongCompactMap.builder(String.class, 2)
+ *         .put(1L, "one").put(2L, "two").build();
+ * }
+ * </pre>
+ */
+public final class LongCompactMap<V> extends PrimitiveCompactMap<V> {
+
+    private final long[] keys;
+
+    /**
+     * LongCompactMapのビルダー。同じキーを複数回putした場合は、最後の値が有効になる。
+     */
+    public static final class Builder<V> extends
+            PrimitiveCompactMap.AbstractBuilder<V, LongCompactMap<V>> {
+
+        private Builder(Class<V> valueType, int expectedSize) {
+            super(valueType, expectedSize);
+        }
+
+        /**
+         * @exception ClassCastException valueTypeと異なる値を指定した場合に発生する。
+         */
+        public Builder<V> put(long key, V value) {
+            add(key, value);
+            return this;
+        }
+
+        public LongCompactMap<V> build() {
+            return finish();
+        }
+
+        @Override
+        LongCompactMap<V> newTable(int n) {
+            return new LongCompactMap<V>(new long[n], new Object[n], 0);
+        }
+
+        @Override
+        LongCompactMap<V> copyOf(LongCompactMap<V> table, int size) {
+            return new LongCompactMap<V>(table.keys.clone(), table.values
+                    .clone(), size);
+        }
+    }
+
+    /**
+     * @param valueType Mapの値項目の型
+     * @param expectedSize 予想されるエントリ数。この数までは表の拡張を行わない
+     */
+    public static <V> Builder<V> builder(Class<V> valueType, int expectedSize) {
+        return new Builder<V>(valueType, expectedSize);
+    }
+
+    private LongCompactMap(long[] keys, Object[] values, int size) {
+        super(values, size);
+        this.keys = keys;
+    }
+
+    /** keyに対応する値を返す。キーがない場合はnullを返す */
+    public V get(long key) {
+        return getOrDefault(key, null);
+    }
+
+    /** keyに対応する値を返す。キーがない場合はdefaultValueを返す */
+    public V getOrDefault(long key, V defaultValue) {
+        int slot = find(key);
+        return (slot < 0) ? defaultValue : valueAt(slot);
+    }
+
+    public boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+
+    /** 全てのキーを昇順で返す */
+    public long[] keys() {
+        long[] res = new long[size()];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                res[n++] = keys[i];
+            }
+        }
+        Arrays.sort(res);
+        return res;
+    }
+
+    @Override
+    long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    @Override
+    void setKeyAt(int slot, long key) {
+        keys[slot] = key;
+    }
+
+    /** フィボナッチハッシュ */
+    @Override
+    int slotOf(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (32 + shift));
+    }
+}
@@ -1,7 +1,16 @@
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
-import java.util.Collections;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
 
@@ -32,6 +41,31 @@ public class MiniUtils {
         return (src == null || src.isEmpty());
     }
 
+    /** RFC1123書式の日付文字列の長さ(formatDateRFC1123の高速処理の範囲内の場合) */
+    public static final int RFC1123_LENGTH = 29;
+
+    /** formatDateRFC1123の高速処理の範囲(1900-01-01T00:00:00Zから10000-01-01T00:00:00Zの前まで)。範囲外はSimpleDateFormatで変換する */
+    private static final long RFC1123_MIN_SECOND = -2208988800L;
+    private static final long RFC1123_MAX_SECOND = 253402300800L;
+
+    private static final byte[] DAY_NAMES = "SunMonTueWedThuFriSat"
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MONTH_NAMES = "JanFebMarAprMayJunJulAugSepOctNovDec"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    /** 現在時刻の1秒分の変換結果。Date-ヘッダのように現在時刻を繰り返し変換する場合は、これを返す */
+    private static volatile RFC1123Cache rfc1123Cache = new RFC1123Cache(
+            Long.MIN_VALUE, null, null);
+
+    /** RFC1123書式以外の、HTTPの日付書式(RFC850, asctime)の解析用 */
+    private static final DateTimeFormatter RFC850_FORMAT = new DateTimeFormatterBuilder()
+            .appendPattern("EEEE, dd-MMM-")
+            .appendValueReduced(ChronoField.YEAR, 2, 2, 1970)
+            .appendPattern(" HH:mm:ss 'GMT'").toFormatter(Locale.US);
+    private static final DateTimeFormatter ASCTIME_FORMAT = new DateTimeFormatterBuilder()
+            .appendPattern("EEE MMM ").padNext(2).appendValue(ChronoField.DAY_OF_MONTH)
+            .appendPattern(" HH:mm:ss yyyy").toFormatter(Locale.US);
+
     /** formatDateRFC1123メソッド用のSimpleDateFormatは、スレッド内で再利用できるよう ThreadLocalに保持する */
     // ※Format系クラスがスレッドセーフでないため、スレッドを超えた共有はしない。
     private static final ThreadLocal<SimpleDateFormat> rfc1123Form = new ThreadLocal<SimpleDateFormat>() {
@@ -51,7 +85,109 @@ public class MiniUtils {
      * @return
      */
     public static String formatDateRFC1123(Date date) {
-        return rfc1123Form.get().format(date);
+        return formatDateRFC1123(date.getTime());
+    }
+
+    /**
+     * Instantの日付・時刻をRFC1123書式の文字列に変換する。
+     * 
+     * @param instant
+     * @return
+     */
+    public static String formatDateRFC1123(Instant instant) {
+        return formatDateRFC1123(instant.toEpochMilli());
+    }
+
+    /**
+     * エポックミリ秒の日付・時刻をRFC1123書式の文字列(例："Tue, 14 Nov 2023 22:13:20 GMT")に変換する。<br>
+     * 現在時刻の場合、同じ秒の間は文字列を生成せずに同じ結果を返す。
+     * 
+     * @param epochMillis 1970-01-01T00:00:00Zからの経過ミリ秒
+     * @return
+     */
+    public static String formatDateRFC1123(long epochMillis) {
+        long sec = Math.floorDiv(epochMillis, 1000L);
+        RFC1123Cache c = cachedRFC1123(sec);
+        if (c != null) {
+            return c.text;
+        }
+        if (sec < RFC1123_MIN_SECOND || sec >= RFC1123_MAX_SECOND) {
+            return formatSlow(epochMillis);
+        }
+        byte[] bytes = new byte[RFC1123_LENGTH];
+        writeRFC1123(sec, null, bytes, 0);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * エポックミリ秒の日付・時刻をRFC1123書式で{@code buf}に追加する。<br>
+     * オブジェクトを生成しないため、レスポンスヘッダを組み立てるバッファへ直接書き込む場合に利用する。
+     * 
+     * @param epochMillis 1970-01-01T00:00:00Zからの経過ミリ秒
+     * @param buf 追加先
+     * @return buf
+     */
+    public static StringBuilder formatDateRFC1123(long epochMillis,
+            StringBuilder buf) {
+        long sec = Math.floorDiv(epochMillis, 1000L);
+        RFC1123Cache c = cachedRFC1123(sec);
+        if (c != null) {
+            return buf.append(c.text);
+        }
+        if (sec < RFC1123_MIN_SECOND || sec >= RFC1123_MAX_SECOND) {
+            return buf.append(formatSlow(epochMillis));
+        }
+        int pos = buf.length();
+        buf.setLength(pos + RFC1123_LENGTH);
+        writeRFC1123(sec, buf, null, pos);
+        return buf;
+    }
+
+    /**
+     * エポックミリ秒の日付・時刻をRFC1123書式で、US-ASCIIのバイト列として{@code buf}に書き込む。<br>
+     * オブジェクトを生成しないため、レスポンスヘッダを組み立てるバッファへ直接書き込む場合に利用する。
+     * 
+     * @param epochMillis 1970-01-01T00:00:00Zからの経過ミリ秒
+     * @param buf 書き込み先
+     * @param off 書き込み開始位置
+     * @return 書き込んだバイト数(通常は{@link #RFC1123_LENGTH})
+     * @exception IndexOutOfBoundsException bufの残りの長さが足りない場合に発生する。
+     */
+    public static int formatDateRFC1123(long epochMillis, byte[] buf, int off) {
+        long sec = Math.floorDiv(epochMillis, 1000L);
+        RFC1123Cache c = cachedRFC1123(sec);
+        if (c != null) {
+            System.arraycopy(c.bytes, 0, buf, off, c.bytes.length);
+            return c.bytes.length;
+        }
+        if (sec < RFC1123_MIN_SECOND || sec >= RFC1123_MAX_SECOND) {
+            byte[] b = formatSlow(epochMillis).getBytes(
+                    StandardCharsets.US_ASCII);
+            System.arraycopy(b, 0, buf, off, b.length);
+            return b.length;
+        }
+        if (off < 0 || off > buf.length - RFC1123_LENGTH) {
+            throw new IndexOutOfBoundsException("Bad offset : " + off);
+        }
+        writeRFC1123(sec, null, buf, off);
+        return RFC1123_LENGTH;
+    }
+
+    /**
+     * HTTPの日付ヘッダ(If-Modified-Since等)の文字列を解析する。<br>
+     * RFC1123書式(例："Tue, 14 Nov 2023 22:13:20 GMT")は高速に解析し、それ以外は
+     * HTTPで許されている旧書式(RFC850, asctime)および数値のタイムゾーンを持つRFC1123書式として解析する。
+     * RFC1123書式の曜日は、年がformatDateRFC1123の高速処理の範囲内の場合は検査しない。
+     * 
+     * @param src 日付文字列
+     * @return エポックミリ秒。解析できない場合は-1
+     */
+    public static long parseDateRFC1123(CharSequence src) {
+        if (src == null) {
+            return -1L;
+        }
+        long v = parseFast(src);
+        return (v != -1L) ? v : parseSlow(src.toString().trim());
     }
 
     /**
@@ -76,16 +212,235 @@ public class MiniUtils {
      * @exception ClassCastException
      *                keyType, valueTypeと異なるキー、値がdataに含まれていた場合に発生する。
      */
-    @SuppressWarnings("unchecked")
     public static <K, V> Map<K, V> buildMap(Object[][] data, Class<K> keyType,
             Class<V> valueType) {
-        Map<K, V> map = new HashMap<K, V>();
-        Map<K, V> cMap = Collections.checkedMap(map, keyType, valueType);
+        // 拡張が起きないよう、要素数から初期容量を決める
+        Map<K, V> map = new HashMap<K, V>(data.length * 4 / 3 + 1);
 
         for (Object[] e : data) {
-            cMap.put((K) e[0], (V) e[1]);
+            map.put(keyType.cast(e[0]), valueType.cast(e[1]));
         }
         return map;
     }
 
+    /**
+     * 二要素のObject配列の配列から、変更不可の{@link CompactMap}を生成する。<br>
+     * 起動時に作成し、以降は参照のみ行う定数表に利用する。HashMapよりメモリ使用量が小さい(参照速度はHashMapと同程度で、小さな表ではやや遅い)。
+     * キーにnullは使用できない。使用例はbuildMapと同じ。
+     * 
+     * @param data
+     *            Mapに設定する二要素配列の配列
+     * @param keyType
+     *            Mapのキー項目の型
+     * @param valueType
+     *            Mapの値項目の型
+     * @return
+     * @exception ClassCastException
+     *                keyType, valueTypeと異なるキー、値がdataに含まれていた場合に発生する。
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> Map<K, V> buildCompactMap(Object[][] data,
+            Class<K> keyType, Class<V> valueType) {
+        CompactMap.Builder<K, V> b = CompactMap.builder(keyType, valueType,
+                data.length);
+        for (Object[] e : data) {
+            b.put((K) e[0], (V) e[1]); // 型はBuilderで検査する
+        }
+        return b.build();
+    }
+
+    // private methods -----------------------------------------
+
+    /** 1秒分の変換結果 */
+    private static final class RFC1123Cache {
+        private final long second;
+        private final String text;
+        private final byte[] bytes;
+
+        RFC1123Cache(long second, String text, byte[] bytes) {
+            this.second = second;
+            this.text = text;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * secの変換結果をキャッシュから返す。secが現在時刻の秒で、キャッシュが古ければ作り直す。
+     * 現在時刻以外(Last-Modified等)はキャッシュしないので、nullを返す。
+     */
+    private static RFC1123Cache cachedRFC1123(long sec) {
+        RFC1123Cache c = rfc1123Cache;
+        if (c.second == sec) {
+            return c;
+        }
+        if (sec != Math.floorDiv(System.currentTimeMillis(), 1000L)) {
+            return null;
+        }
+        byte[] bytes = new byte[RFC1123_LENGTH];
+        writeRFC1123(sec, null, bytes, 0);
+        c = new RFC1123Cache(sec, new String(bytes, StandardCharsets.US_ASCII),
+                bytes);
+        rfc1123Cache = c;
+        return c;
+    }
+
+    private static String formatSlow(long epochMillis) {
+        return rfc1123Form.get().format(new Date(epochMillis));
+    }
+
+    /**
+     * secをRFC1123書式でsbまたはbytesのoffの位置から書き込む。sbとbytesのどちらか一方を指定する。
+     */
+    private static void writeRFC1123(long sec, StringBuilder sb, byte[] bytes,
+            int off) {
+        long days = Math.floorDiv(sec, 86400L);
+        int secOfDay = (int) Math.floorMod(sec, 86400L);
+
+        // 1970-01-01からの日数を年月日に変換する(グレゴリオ暦)
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        int doe = (int) (z - era * 146097);
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int day = doy - (153 * mp + 2) / 5 + 1;
+        int month = (mp < 10) ? mp + 3 : mp - 9;
+        int year = (int) (yoe + era * 400) + ((month <= 2) ? 1 : 0);
+        int dow = (int) Math.floorMod(days + 4, 7L); // 1970-01-01は木曜日
+
+        put(sb, bytes, off, DAY_NAMES[dow * 3]);
+        put(sb, bytes, off + 1, DAY_NAMES[dow * 3 + 1]);
+        put(sb, bytes, off + 2, DAY_NAMES[dow * 3 + 2]);
+        put(sb, bytes, off + 3, (byte) ',');
+        put(sb, bytes, off + 4, (byte) ' ');
+        put2(sb, bytes, off + 5, day);
+        put(sb, bytes, off + 7, (byte) ' ');
+        put(sb, bytes, off + 8, MONTH_NAMES[(month - 1) * 3]);
+        put(sb, bytes, off + 9, MONTH_NAMES[(month - 1) * 3 + 1]);
+        put(sb, bytes, off + 10, MONTH_NAMES[(month - 1) * 3 + 2]);
+        put(sb, bytes, off + 11, (byte) ' ');
+        put2(sb, bytes, off + 12, year / 100);
+        put2(sb, bytes, off + 14, year % 100);
+        put(sb, bytes, off + 16, (byte) ' ');
+        put2(sb, bytes, off + 17, secOfDay / 3600);
+        put(sb, bytes, off + 19, (byte) ':');
+        put2(sb, bytes, off + 20, secOfDay / 60 % 60);
+        put(sb, bytes, off + 22, (byte) ':');
+        put2(sb, bytes, off + 23, secOfDay % 60);
+        put(sb, bytes, off + 25, (byte) ' ');
+        put(sb, bytes, off + 26, (byte) 'G');
+        put(sb, bytes, off + 27, (byte) 'M');
+        put(sb, bytes, off + 28, (byte) 'T');
+    }
+
+    private static void put(StringBuilder sb, byte[] bytes, int pos, byte c) {
+        if (sb != null) {
+            sb.setCharAt(pos, (char) c);
+        } else {
+            bytes[pos] = c;
+        }
+    }
+
+    private static void put2(StringBuilder sb, byte[] bytes, int pos, int v) {
+        put(sb, bytes, pos, (byte) ('0' + v / 10));
+        put(sb, bytes, pos + 1, (byte) ('0' + v % 10));
+    }
+
+    /**
+     * "Tue, 14 Nov 2023 22:13:20 GMT"の形式のみを解析する。それ以外は-1を返す。<br>
+     * 1900年より前は、formatDateRFC1123と同じく高速処理の範囲外として-1を返す(以下の計算は負の年を扱えないため)
+     */
+    private static long parseFast(CharSequence s) {
+        if (s.length() != RFC1123_LENGTH || s.charAt(3) != ','
+                || s.charAt(4) != ' ' || s.charAt(7) != ' '
+                || s.charAt(11) != ' ' || s.charAt(16) != ' '
+                || s.charAt(19) != ':' || s.charAt(22) != ':'
+                || s.charAt(25) != ' ' || s.charAt(26) != 'G'
+                || s.charAt(27) != 'M' || s.charAt(28) != 'T') {
+            return -1L;
+        }
+        int day = digits(s, 5, 2);
+        int month = monthOf(s, 8);
+        int year = digits(s, 12, 4);
+        int hour = digits(s, 17, 2);
+        int min = digits(s, 20, 2);
+        int sec = digits(s, 23, 2);
+        if (day < 1 || month < 1 || year < 1900 || hour < 0 || hour > 23
+                || min < 0 || min > 59 || sec < 0 || sec > 59
+                || day > daysInMonth(year, month)) {
+            return -1L;
+        }
+        // 年月日を1970-01-01からの日数に変換する(グレゴリオ暦)
+        int y = (month <= 2) ? year - 1 : year;
+        int era = y / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * ((month > 2) ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        long days = era * 146097L + doe - 719468;
+        return ((days * 86400L) + hour * 3600 + min * 60 + sec) * 1000L;
+    }
+
+    /** 数字以外が含まれていれば-1を返す */
+    private static int digits(CharSequence s, int off, int len) {
+        int v = 0;
+        for (int i = off; i < off + len; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    /** 月の略称を1～12に変換する。不正な場合は-1を返す */
+    private static int monthOf(CharSequence s, int off) {
+        char c0 = s.charAt(off);
+        char c1 = s.charAt(off + 1);
+        char c2 = s.charAt(off + 2);
+        for (int m = 0; m < 12; m++) {
+            if (MONTH_NAMES[m * 3] == c0 && MONTH_NAMES[m * 3 + 1] == c1
+                    && MONTH_NAMES[m * 3 + 2] == c2) {
+                return m + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+        case 2:
+            return ((year % 4 == 0 && year % 100 != 0) || year % 400 == 0) ? 29
+                    : 28;
+        case 4:
+        case 6:
+        case 9:
+        case 11:
+            return 30;
+        default:
+            return 31;
+        }
+    }
+
+    private static long parseSlow(String s) {
+        try {
+            return ZonedDateTime.parse(s, DateTimeFormatter.RFC_1123_DATE_TIME)
+                    .toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // 次の書式を試す
+        }
+        try {
+            return ZonedDateTime.of(LocalDateTime.parse(s, RFC850_FORMAT),
+                    ZoneOffset.UTC).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // 次の書式を試す
+        }
+        try {
+            return ZonedDateTime.of(LocalDateTime.parse(s, ASCTIME_FORMAT),
+                    ZoneOffset.UTC).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1L;
+        }
+    }
+
 }
@@ -0,0 +1,272 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * {@link PasswordHashUtil}のハッシュ・一致判定を、大量のデータに対してまとめて行うユーティリティクラス。<br>
+ * 一括移行や監査のバッチ処理向けに、入力を複数のチャンクに分割し、スレッドプールで並列に処理します。<br>
+ * 結果は入力と同じ順序で返されます。<br>
+ * 入力にはCollection以外のIterableも指定できます(Streamは{@code stream::iterator}として渡せます)。
+ * その場合は入力を一定数ずつ読み込んで処理するため、入力全体をメモリに展開しません(結果は全件保持します)。<br>
+ * 使用例：<br>
+ *
+ * <pre>
+ * {@code
+ * List<Map.Entry<String, String>> pairs = ...; // 平文パスワードとハッシュの組
+ * PasswordHashBulk.Result<Boolean> res = PasswordHashBulk.passwordMatch(pairs);
+ * for (int i = 0; i < res.size(); i++) {
+ *     if (res.getError(i) == null && !res.get(i)) { ... }
+ * }
+ * logger.info(res.getThroughput() + " verifications/sec");
+ * }
+ * </pre>
+ */
+public class PasswordHashBulk {
+
+    /** 1スレッドあたりに割り当てるチャンク数。処理時間のばらつきを均すため、スレッド数より多めに分割する */
+    private static final int CHUNKS_PER_THREAD = 4;
+    /** Collection以外の入力を読み込む単位(1スレッドあたりの要素数) */
+    private static final int WINDOW_PER_THREAD = 1024;
+
+    /**
+     * 一括処理の結果。入力と同じ順序で、各要素の処理結果または例外を保持します。
+     *
+     * @param <T> 各要素の処理結果の型
+     */
+    public static class Result<T> {
+        private final Object[] values;
+        private final RuntimeException[] errors;
+        private final long elapsedNanos;
+
+        private Result(Object[] values, RuntimeException[] errors,
+                long elapsedNanos) {
+            this.values = values;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /** 処理した要素数 */
+        public int size() {
+            return values.length;
+        }
+
+        /**
+         * i番目の要素の処理結果を返す。処理中に例外が発生していた場合はnull。
+         *
+         * @param i 入力での位置
+         * @return 処理結果
+         */
+        @SuppressWarnings("unchecked")
+        public T get(int i) {
+            return (T) values[i];
+        }
+
+        /**
+         * i番目の要素の処理中に発生した例外を返す。正常に処理された場合はnull。
+         *
+         * @param i 入力での位置
+         * @return 発生した例外
+         */
+        public RuntimeException getError(int i) {
+            return errors[i];
+        }
+
+        /** 例外が発生した要素の数 */
+        public int getFailureCount() {
+            int c = 0;
+            for (RuntimeException e : errors) {
+                if (e != null) {
+                    c++;
+                }
+            }
+            return c;
+        }
+
+        /** 一括処理全体の経過時間(ナノ秒) */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /** スループット(1秒あたりの処理件数) */
+        public double getThroughput() {
+            return (elapsedNanos == 0) ? 0.0 : values.length * 1e9
+                    / elapsedNanos;
+        }
+    }
+
+    /**
+     * 平文パスワードとハッシュの組について、{@link PasswordHashUtil#passwordMatch(String, String)}
+     * を並列に実行します。処理には{@link ForkJoinPool#commonPool()}を利用します。
+     *
+     * @param pairs キーが平文パスワード、値がパスワードハッシュの組のコレクションまたはIterable
+     * @return 一致判定の結果
+     * @throws InterruptedException 処理の完了待ちの間に割り込まれた場合
+     */
+    public static Result<Boolean> passwordMatch(
+            Iterable<? extends Map.Entry<String, String>> pairs)
+            throws InterruptedException {
+        return passwordMatch(pairs, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 平文パスワードとハッシュの組について、{@link PasswordHashUtil#passwordMatch(String, String)}
+     * を指定のExecutorServiceで並列に実行します。
+     *
+     * @param pairs キーが平文パスワード、値がパスワードハッシュの組のコレクションまたはIterable
+     * @param executor 処理を実行するExecutorService
+     * @return 一致判定の結果
+     * @throws InterruptedException 処理の完了待ちの間に割り込まれた場合
+     */
+    public static Result<Boolean> passwordMatch(
+            Iterable<? extends Map.Entry<String, String>> pairs,
+            ExecutorService executor) throws InterruptedException {
+        return run(pairs, executor, new Op<Map.Entry<String, String>>() {
+            @Override
+            public Object apply(Map.Entry<String, String> e) {
+                return PasswordHashUtil.passwordMatch(e.getKey(), e.getValue());
+            }
+        });
+    }
+
+    /**
+     * 平文パスワードについて、{@link PasswordHashUtil#crypt(String)}を並列に実行します。
+     * 処理には{@link ForkJoinPool#commonPool()}を利用します。
+     *
+     * @param srcs 平文パスワードのコレクションまたはIterable
+     * @return {@link PasswordHashUtil#crypt(String)}と同じ形式($sha256$[ストレッチング回数]$[salt]$[ハッシュされたパスワード])の文字列
+     * @throws InterruptedException 処理の完了待ちの間に割り込まれた場合
+     */
+    public static Result<String> crypt(Iterable<String> srcs)
+            throws InterruptedException {
+        return crypt(srcs, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 平文パスワードについて、{@link PasswordHashUtil#crypt(String)}を指定のExecutorServiceで並列に実行します。
+     *
+     * @param srcs 平文パスワードのコレクションまたはIterable
+     * @param executor 処理を実行するExecutorService
+     * @return {@link PasswordHashUtil#crypt(String)}と同じ形式($sha256$[ストレッチング回数]$[salt]$[ハッシュされたパスワード])の文字列
+     * @throws InterruptedException 処理の完了待ちの間に割り込まれた場合
+     */
+    public static Result<String> crypt(Iterable<String> srcs,
+            ExecutorService executor) throws InterruptedException {
+        return run(srcs, executor, new Op<String>() {
+            @Override
+            public Object apply(String src) {
+                return PasswordHashUtil.crypt(src);
+            }
+        });
+    }
+
+    // private methods -----------------------------------------
+
+    /** 1要素分の処理 */
+    private interface Op<E> {
+        Object apply(E e);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E, T> Result<T> run(Iterable<? extends E> src,
+            ExecutorService executor, Op<E> op) throws InterruptedException {
+        if (src == null) {
+            throw new IllegalArgumentException("input is null.");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor is null.");
+        }
+        final long start = System.nanoTime();
+        int parallelism = (executor instanceof ForkJoinPool) ? ((ForkJoinPool) executor)
+                .getParallelism() : Runtime.getRuntime().availableProcessors();
+
+        if (src instanceof Collection) {
+            List<E> in = toList((Collection<E>) src);
+            Object[] values = new Object[in.size()];
+            RuntimeException[] errors = new RuntimeException[in.size()];
+            runWindow(in, values, errors, 0, executor, parallelism, op);
+            return new Result<T>(values, errors, System.nanoTime() - start);
+        }
+
+        // 入力を一定数ずつ読み込み、結果の配列は必要に応じて拡張する
+        int windowSize = parallelism * WINDOW_PER_THREAD;
+        Object[] values = new Object[windowSize];
+        RuntimeException[] errors = new RuntimeException[windowSize];
+        int size = 0;
+        List<E> window = new ArrayList<E>(windowSize);
+        Iterator<? extends E> it = src.iterator();
+        while (it.hasNext()) {
+            window.clear();
+            while (window.size() < windowSize && it.hasNext()) {
+                window.add(it.next());
+            }
+            if (values.length < size + window.size()) {
+                int capacity = Math.max(values.length * 2, size + window.size());
+                values = Arrays.copyOf(values, capacity);
+                errors = Arrays.copyOf(errors, capacity);
+            }
+            runWindow(window, values, errors, size, executor, parallelism, op);
+            size += window.size();
+        }
+        return new Result<T>(Arrays.copyOf(values, size),
+                Arrays.copyOf(errors, size), System.nanoTime() - start);
+    }
+
+    /**
+     * inを並列に処理し、結果をvalues, errorsのoffset以降に格納する。
+     */
+    private static <E> void runWindow(final List<E> in, final Object[] values,
+            final RuntimeException[] errors, final int offset,
+            ExecutorService executor, int parallelism, final Op<E> op)
+            throws InterruptedException {
+        int size = in.size();
+        int chunkSize = Math.max(1, size / (parallelism * CHUNKS_PER_THREAD));
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int from = 0; from < size; from += chunkSize) {
+            final int f = from;
+            final int t = Math.min(size, from + chunkSize);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int i = f; i < t; i++) {
+                        try {
+                            values[offset + i] = op.apply(in.get(i));
+                        } catch (RuntimeException e) {
+                            errors[offset + i] = e;
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
+        for (Future<Void> f : executor.invokeAll(tasks)) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                // 各要素の例外はタスク内で捕捉しているため、ここに来るのはErrorの場合のみ
+                throw new RuntimeException(e.getCause().getMessage(),
+                        e.getCause());
+            }
+        }
+    }
+
+    private static <E> List<E> toList(Collection<E> src) {
+        if (src instanceof List && src instanceof RandomAccess) {
+            return (List<E>) src;
+        }
+        return new ArrayList<E>(src);
+    }
+
+    private PasswordHashBulk() {
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * {@link PasswordHashUtil}のハッシュ処理・一致判定の実行を通知するフック。<br>
+ * {@link PasswordHashUtil#setMetrics(PasswordHashMetrics)}で設定します。
+ * 認証処理の中で呼ばれるため、実装は短時間で終わり、例外を投げないようにしてください。
+ * 
+ * @see PasswordHashStats
+ */
+public interface PasswordHashMetrics {
+
+    /**
+     * ハッシュの作成が完了したときに呼ばれます。
+     * 
+     * @param nanos 処理時間(ナノ秒)
+     * @param iterateCount ストレッチングを行った回数
+     */
+    void crypted(long nanos, int iterateCount);
+
+    /**
+     * 一致判定が完了したときに呼ばれます。
+     * 
+     * @param nanos 処理時間(ナノ秒)
+     * @param iterateCount ストレッチングを行った回数
+     * @param match パスワードが一致すればtrue, そうでなければfalse
+     */
+    void verified(long nanos, int iterateCount, boolean match);
+
+    /**
+     * {@link PasswordVerifyCache}のキャッシュにヒットし、ストレッチングを行わずに一致と判定したときに呼ばれます。
+     * この場合、{@link #verified(long, int, boolean)}は呼ばれません。既定の実装は何もしません。
+     * 
+     * @param nanos 処理時間(ナノ秒)
+     */
+    default void cacheHit(long nanos) {
+    }
+}
@@ -0,0 +1,133 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * {@link PasswordHashUtil}のハッシュ処理・一致判定の回数と処理時間を集計する{@link PasswordHashMetrics}の実装。<br>
+ * 集計結果はJMX(MBean名 {@value #OBJECT_NAME})で参照できます。<br>
+ * 使用例：アプリケーションの起動時に以下を実行する<br>
+ * 
+ * <pre>
+ * {@code
+ * PasswordHashStats.install();
+ * }
+ * </pre>
+ */
+public class PasswordHashStats implements PasswordHashMetrics,
+        PasswordHashStatsMBean {
+
+    /** JMXに登録する際のMBean名 */
+    public static final String OBJECT_NAME = "PasswordHashUtil:type=PasswordHashStats";
+
+    private final AtomicLong cryptCount = new AtomicLong();
+    private final AtomicLong matchCount = new AtomicLong();
+    private final AtomicLong mismatchCount = new AtomicLong();
+    private final AtomicLong iterationCount = new AtomicLong();
+    private final AtomicLong cacheHitCount = new AtomicLong();
+    private final LatencyHistogram cryptLatency = new LatencyHistogram();
+    private final LatencyHistogram verifyLatency = new LatencyHistogram();
+
+    /**
+     * PasswordHashStatsを生成してJMXに登録し、{@link PasswordHashUtil}のフックとして設定します。
+     * 
+     * @return 設定したPasswordHashStats
+     */
+    public static PasswordHashStats install() {
+        PasswordHashStats stats = new PasswordHashStats();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(stats, name);
+        } catch (JMException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+        PasswordHashUtil.setMetrics(stats);
+        return stats;
+    }
+
+    @Override
+    public void crypted(long nanos, int iterateCount) {
+        cryptCount.incrementAndGet();
+        iterationCount.addAndGet(iterateCount);
+        cryptLatency.record(nanos);
+    }
+
+    @Override
+    public void verified(long nanos, int iterateCount, boolean match) {
+        (match ? matchCount : mismatchCount).incrementAndGet();
+        iterationCount.addAndGet(iterateCount);
+        verifyLatency.record(nanos);
+    }
+
+    @Override
+    public void cacheHit(long nanos) {
+        cacheHitCount.incrementAndGet();
+    }
+
+    @Override
+    public long getCryptCount() {
+        return cryptCount.get();
+    }
+
+    @Override
+    public long getVerifyCount() {
+        return matchCount.get() + mismatchCount.get();
+    }
+
+    @Override
+    public long getMatchCount() {
+        return matchCount.get();
+    }
+
+    @Override
+    public long getMismatchCount() {
+        return mismatchCount.get();
+    }
+
+    @Override
+    public long getIterationCount() {
+        return iterationCount.get();
+    }
+
+    @Override
+    public long getCacheHitCount() {
+        return cacheHitCount.get();
+    }
+
+    @Override
+    public long getCryptLatencyP50Micros() {
+        return cryptLatency.getPercentile(50) / 1000;
+    }
+
+    @Override
+    public long getCryptLatencyP99Micros() {
+        return cryptLatency.getPercentile(99) / 1000;
+    }
+
+    @Override
+    public long getVerifyLatencyP50Micros() {
+        return verifyLatency.getPercentile(50) / 1000;
+    }
+
+    @Override
+    public long getVerifyLatencyP99Micros() {
+        return verifyLatency.getPercentile(99) / 1000;
+    }
+
+    @Override
+    public void reset() {
+        cryptCount.set(0);
+        matchCount.set(0);
+        mismatchCount.set(0);
+        iterationCount.set(0);
+        cacheHitCount.set(0);
+        cryptLatency.reset();
+        verifyLatency.reset();
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * {@link PasswordHashStats}をJMXで公開するためのMBeanインターフェース。
+ */
+public interface PasswordHashStatsMBean {
+
+    long getCryptCount();
+
+    long getVerifyCount();
+
+    long getMatchCount();
+
+    long getMismatchCount();
+
+    long getIterationCount();
+
+    /** {@link PasswordVerifyCache}のキャッシュにヒットした回数(getVerifyCount()には含まない) */
+    long getCacheHitCount();
+
+    long getCryptLatencyP50Micros();
+
+    long getCryptLatencyP99Micros();
+
+    long getVerifyLatencyP50Micros();
+
+    long getVerifyLatencyP99Micros();
+
+    void reset();
+}
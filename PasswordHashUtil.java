@@ -1,19 +1,46 @@
-import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
 
 import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.lang3.RandomStringUtils;
 
 /**
  * パスワードのハッシュ、およびハッシュしたパスワードと平文の一致判定を行うユーティリティクラス。<br>
- * 要:Apache Commons-Lang3, Commons-Codec<br>
+ * 要:Apache Commons-Codec<br>
  * <br>
- * ハッシュ処理の仕様：ストレッチング(saltを付加し、Digestを取る)を1000回繰り返します。DigestアルゴリズムはSHA-256です
+ * ハッシュ処理の仕様：ストレッチング(saltを付加し、Digestを取る)を繰り返します。DigestアルゴリズムはSHA-256です。<br>
+ * ストレッチングの回数は既定で1000回で、{@link #setIterateCount(int)}で変更できます。
+ * 回数はハッシュ文字列に埋め込まれるため、変更前に作成したハッシュもそのまま一致判定に使えます。
+ * 回数の目安は{@link #calibrateIterateCount(long)}で求められます。<br>
+ * <br>
+ * 回数を持たない旧形式([salt]$[ハッシュされたパスワード])のハッシュも一致判定できます。
+ * 旧形式や、現在の設定より少ない回数で作成されたハッシュは{@link #needsRehash(String)}がtrueを返すので、
+ * ログイン成功時に再ハッシュして保存し直すことで、新しい設定に移行できます。
+ * 
+ * <pre>
+ * {@code
+ * if (PasswordHashUtil.passwordMatch(pass, hashed)) {
+ *     if (PasswordHashUtil.needsRehash(hashed)) {
+ *         store(PasswordHashUtil.crypt(pass));
+ *     }
+ *     ...
+ * }
+ * }
+ * </pre>
+ * 
+ * 格納領域を節約したい場合は、{@link #cryptBinary(String)}で作成するバイナリ形式も利用できます。
+ * バイナリ形式は文字列形式の約半分の大きさで、一致判定の際に文字列のエンコード・デコードを行いません。
+ * 既存の文字列形式のハッシュは{@link #toBinary(String)}でバイナリ形式に変換できます。
  */
 public class PasswordHashUtil {
     
     
-    /** ストレッチングを行う回数 */
+    /** ストレッチングを行う回数の既定値。旧形式のハッシュはこの回数で作成されている */
     private static final int DEFAULT_ITERATE_COUNT = 1000;
     /** saltの長さ */
     private static final int SALT_LENGTH = 64;
@@ -23,13 +50,52 @@ public class PasswordHashUtil {
         String a = "abcdefghijklmnopqrstuvwxyz";
         SALT_CHARS = a + a.toUpperCase() + "_,.!\"#%&'()-=;+:*\\";
     }
+    /** 区切り文字 */
+    private static final char SEPARATOR = '$';
+    /** ハッシュ文字列に埋め込むDigestアルゴリズムの識別子 */
+    private static final String ALGORITHM_ID = "sha256";
+    /** 回数を埋め込む形式の接頭辞。saltは「$」を含まないので、旧形式とはこれで区別できる */
+    private static final String VERSIONED_PREFIX = SEPARATOR + ALGORITHM_ID
+            + SEPARATOR;
+    /** バイナリ形式の版数 */
+    private static final byte BINARY_VERSION = 1;
+    /** バイナリ形式のヘッダ長。版数(1byte)、ストレッチング回数(4byte)、saltの長さ(1byte) */
+    private static final int BINARY_HEADER_LENGTH = 6;
+    /** バイナリ形式で新しく生成するsaltの長さ(byte) */
+    private static final int BINARY_SALT_LENGTH = 16;
+    /** ハッシュの長さ(byte) */
+    private static final int HASH_LENGTH = 32;
+    /** calibrateIterateCountメソッドで計測に使う回数 */
+    private static final int CALIBRATE_SAMPLE_COUNT = 10000;
+
+    /** 新しくハッシュを作成する際のストレッチング回数 */
+    private static volatile int iterateCount = DEFAULT_ITERATE_COUNT;
+    /** ハッシュ処理・一致判定の実行を通知するフック。未設定(null)の場合は時刻の取得も行わない */
+    private static volatile PasswordHashMetrics metrics;
+
+    /** salt生成用の乱数生成器。スレッド間で競合しないよう、ThreadLocalに保持する */
+    private static final ThreadLocal<SecureRandom> random = new ThreadLocal<SecureRandom>() {
+        @Override
+        protected SecureRandom initialValue() {
+            return new SecureRandom();
+        }
+    };
+
+    /** ストレッチング用のMessageDigestと作業領域は、スレッド内で再利用できるよう ThreadLocalに保持する */
+    // ※MessageDigestがスレッドセーフでないため、スレッドを超えた共有はしない。
+    private static final ThreadLocal<Stretcher> stretcher = new ThreadLocal<Stretcher>() {
+        @Override
+        protected Stretcher initialValue() {
+            return new Stretcher();
+        }
+    };
 
     /**
      * 平文パスワードのハッシュにsaltを付加した文字列を返します。<br>
      * 戻り値の文字列は以下のような形式なります。<br>
      * 
      * <pre>
-     * [salt]$[ハッシュされたパスワード]
+     * $sha256$[ストレッチング回数]$[salt]$[ハッシュされたパスワード]
      * </pre>
      * 
      * saltは自動生成（擬似乱数文字列）されます。
@@ -38,13 +104,14 @@ public class PasswordHashUtil {
      * @return 上記形式の文字列
      */
     public static String crypt(String src) {
-        return crypt((src == null) ? "" : src, newSalt(SALT_LENGTH),
-                DEFAULT_ITERATE_COUNT);
+        return crypt(((src == null) ? "" : src)
+                .getBytes(StandardCharsets.UTF_8));
     }
 
     /**
      * 入力された平文パスワードをハッシュし、hashedと一致するかどうか判定します。 <br>
-     * hashedは、{@link #crypt(String)}メソッドで作成されるものと同様、以下の形式になっているものとします。
+     * hashedは、{@link #crypt(String)}メソッドで作成されるものと同様の形式か、
+     * 以下の旧形式になっているものとします。
      * 
      * <pre>
      * [salt]$[ハッシュされたパスワード]
@@ -55,14 +122,334 @@ public class PasswordHashUtil {
      * @return パスワードが一致すればtrue, そうでなければfalse
      */
     public static boolean passwordMatch(String pass, String hashed) {
-        if (hashed == null || hashed.length() < SALT_LENGTH) {
-            throw new IllegalArgumentException("Bad hash data : " + hashed);
+        return passwordMatch(
+                ((pass == null) ? "" : pass).getBytes(StandardCharsets.UTF_8),
+                hashed);
+    }
+
+    /**
+     * 平文パスワードのハッシュにsaltを付加した文字列を返します。<br>
+     * {@link #crypt(String)}と同じ形式の文字列を返しますが、パスワードをStringにせずに渡せます。
+     * 
+     * @param src 平文パスワード
+     * @return {@link #crypt(String)}と同じ形式の文字列
+     */
+    public static String crypt(char[] src) {
+        byte[] bin = toBytes(src);
+        try {
+            return crypt(bin);
+        } finally {
+            Arrays.fill(bin, (byte) 0);
+        }
+    }
+
+    /**
+     * UTF-8でエンコードされた平文パスワードのハッシュにsaltを付加した文字列を返します。<br>
+     * {@link #crypt(String)}と同じ形式の文字列を返します。
+     * 
+     * @param src UTF-8でエンコードされた平文パスワード
+     * @return {@link #crypt(String)}と同じ形式の文字列
+     */
+    public static String crypt(byte[] src) {
+        PasswordHashMetrics m = metrics;
+        long start = (m == null) ? 0L : System.nanoTime();
+        int count = iterateCount;
+        String res = cryptVersioned((src == null) ? new byte[0] : src,
+                newSalt(SALT_LENGTH), count);
+        if (m != null) {
+            m.crypted(System.nanoTime() - start, count);
+        }
+        return res;
+    }
+
+    /**
+     * 入力された平文パスワードをハッシュし、hashedと一致するかどうか判定します。<br>
+     * {@link #passwordMatch(String, String)}と同じ判定を、パスワードをStringにせずに行います。
+     * 
+     * @param pass 平文パスワード
+     * @param hashed {@link #passwordMatch(String, String)}と同じ形式のパスワードハッシュ
+     * @return パスワードが一致すればtrue, そうでなければfalse
+     */
+    public static boolean passwordMatch(char[] pass, String hashed) {
+        byte[] bin = toBytes(pass);
+        try {
+            return passwordMatch(bin, hashed);
+        } finally {
+            Arrays.fill(bin, (byte) 0);
+        }
+    }
+
+    /**
+     * UTF-8でエンコードされた平文パスワードをハッシュし、hashedと一致するかどうか判定します。
+     * 
+     * @param pass UTF-8でエンコードされた平文パスワード
+     * @param hashed {@link #passwordMatch(String, String)}と同じ形式のパスワードハッシュ
+     * @return パスワードが一致すればtrue, そうでなければfalse
+     */
+    public static boolean passwordMatch(byte[] pass, String hashed) {
+        PasswordHashMetrics m = metrics;
+        long start = (m == null) ? 0L : System.nanoTime();
+        byte[] ps = (pass == null) ? new byte[0] : pass;
+
+        int count;
+        boolean match;
+        if (hashed != null && hashed.startsWith(VERSIONED_PREFIX)) {
+            int saltPos = hashed.indexOf(SEPARATOR, VERSIONED_PREFIX.length()) + 1;
+            count = parseIterateCount(hashed, saltPos);
+            String salt = hashed.substring(saltPos, hashed.indexOf(SEPARATOR, saltPos));
+            match = hashed.equals(cryptVersioned(ps, salt, count));
+        } else {
+            if (hashed == null || hashed.length() < SALT_LENGTH) {
+                throw new IllegalArgumentException("Bad hash data : " + hashed);
+            }
+            count = DEFAULT_ITERATE_COUNT;
+            String salt = hashed.substring(0, SALT_LENGTH);
+            match = hashed.equals(crypt(ps, salt, count));
         }
 
-        String ps = (pass == null) ? "" : pass;
+        if (m != null) {
+            m.verified(System.nanoTime() - start, count, match);
+        }
+        return match;
+    }
 
-        String salt = hashed.substring(0, SALT_LENGTH);
-        return hashed.equals(crypt(ps, salt, DEFAULT_ITERATE_COUNT));
+    /**
+     * hashedを、現在の設定で作成し直すべきかどうか判定します。<br>
+     * 旧形式のハッシュ、および現在の設定({@link #getIterateCount()})より少ない回数で
+     * 作成されたハッシュの場合にtrueを返します。
+     * 
+     * @param hashed {@link #passwordMatch(String, String)}と同じ形式のパスワードハッシュ
+     * @return 作成し直すべきであればtrue, そうでなければfalse
+     */
+    public static boolean needsRehash(String hashed) {
+        if (hashed == null || !hashed.startsWith(VERSIONED_PREFIX)) {
+            return true;
+        }
+        int saltPos = hashed.indexOf(SEPARATOR, VERSIONED_PREFIX.length()) + 1;
+        return parseIterateCount(hashed, saltPos) < iterateCount;
+    }
+
+    /**
+     * 新しくハッシュを作成する際のストレッチング回数を設定します。
+     * 
+     * @param count ストレッチング回数
+     */
+    public static void setIterateCount(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Bad iterate count : " + count);
+        }
+        iterateCount = count;
+    }
+
+    /**
+     * 新しくハッシュを作成する際のストレッチング回数を返します。
+     * 
+     * @return ストレッチング回数
+     */
+    public static int getIterateCount() {
+        return iterateCount;
+    }
+
+    /**
+     * ハッシュ処理・一致判定の実行を通知するフックを設定します。nullを指定すると通知を止めます。
+     * 
+     * @param m 通知先
+     * @see PasswordHashStats#install()
+     */
+    public static void setMetrics(PasswordHashMetrics m) {
+        metrics = m;
+    }
+
+    /**
+     * @return ハッシュ処理・一致判定の実行を通知するフック。設定されていなければnull
+     */
+    public static PasswordHashMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 実行中のマシンで、1回の一致判定にかかる時間がおおよそtargetMillisとなるストレッチング回数を求めます。<br>
+     * 結果は既定値(1000回)を下回りません。設定には{@link #setIterateCount(int)}を利用してください。
+     * 
+     * @param targetMillis 1回の一致判定にかける時間(ミリ秒)
+     * @return ストレッチング回数
+     */
+    public static int calibrateIterateCount(long targetMillis) {
+        if (targetMillis <= 0) {
+            throw new IllegalArgumentException("Bad target time : "
+                    + targetMillis);
+        }
+        byte[] src = "calibrate".getBytes(StandardCharsets.UTF_8);
+        byte[] salt = newSalt(SALT_LENGTH).getBytes(StandardCharsets.UTF_8);
+        Stretcher st = stretcher.get();
+
+        // 初回はJITコンパイル前のため、計測対象から外す
+        st.stretch(salt, 0, salt.length, src, CALIBRATE_SAMPLE_COUNT);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            st.stretch(salt, 0, salt.length, src, CALIBRATE_SAMPLE_COUNT);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        double count = targetMillis * 1e6 * CALIBRATE_SAMPLE_COUNT
+                / Math.max(best, 1L);
+        return (int) Math.max(DEFAULT_ITERATE_COUNT,
+                Math.min(count, Integer.MAX_VALUE));
+    }
+
+    /**
+     * 平文パスワードのハッシュを、バイナリ形式で返します。<br>
+     * 戻り値は以下の形式のバイト列です。saltは自動生成(乱数)されます。
+     * 
+     * <pre>
+     * [版数(1byte)][ストレッチング回数(4byte)][saltの長さ(1byte)][salt][ハッシュされたパスワード(32byte)]
+     * </pre>
+     * 
+     * @param src 平文パスワード
+     * @return 上記形式のバイト列
+     */
+    public static byte[] cryptBinary(String src) {
+        return cryptBinary(((src == null) ? "" : src)
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 平文パスワードのハッシュを、バイナリ形式で返します。
+     * 
+     * @param src 平文パスワード
+     * @return {@link #cryptBinary(String)}と同じ形式のバイト列
+     */
+    public static byte[] cryptBinary(char[] src) {
+        byte[] bin = toBytes(src);
+        try {
+            return cryptBinary(bin);
+        } finally {
+            Arrays.fill(bin, (byte) 0);
+        }
+    }
+
+    /**
+     * UTF-8でエンコードされた平文パスワードのハッシュを、バイナリ形式で返します。
+     * 
+     * @param src UTF-8でエンコードされた平文パスワード
+     * @return {@link #cryptBinary(String)}と同じ形式のバイト列
+     */
+    public static byte[] cryptBinary(byte[] src) {
+        PasswordHashMetrics m = metrics;
+        long start = (m == null) ? 0L : System.nanoTime();
+        byte[] salt = new byte[BINARY_SALT_LENGTH];
+        random.get().nextBytes(salt);
+        int count = iterateCount;
+        byte[] res = stretcher.get().stretch(salt, 0, salt.length,
+                (src == null) ? new byte[0] : src, count);
+        byte[] bin = toBinary(count, salt, 0, salt.length, res);
+        if (m != null) {
+            m.crypted(System.nanoTime() - start, count);
+        }
+        return bin;
+    }
+
+    /**
+     * 入力された平文パスワードをハッシュし、バイナリ形式のhashedと一致するかどうか判定します。
+     * 
+     * @param pass 平文パスワード
+     * @param hashed {@link #cryptBinary(String)}と同じ形式のパスワードハッシュ
+     * @return パスワードが一致すればtrue, そうでなければfalse
+     */
+    public static boolean passwordMatch(String pass, byte[] hashed) {
+        return passwordMatch(
+                ((pass == null) ? "" : pass).getBytes(StandardCharsets.UTF_8),
+                hashed);
+    }
+
+    /**
+     * 入力された平文パスワードをハッシュし、バイナリ形式のhashedと一致するかどうか判定します。
+     * 
+     * @param pass 平文パスワード
+     * @param hashed {@link #cryptBinary(String)}と同じ形式のパスワードハッシュ
+     * @return パスワードが一致すればtrue, そうでなければfalse
+     */
+    public static boolean passwordMatch(char[] pass, byte[] hashed) {
+        byte[] bin = toBytes(pass);
+        try {
+            return passwordMatch(bin, hashed);
+        } finally {
+            Arrays.fill(bin, (byte) 0);
+        }
+    }
+
+    /**
+     * UTF-8でエンコードされた平文パスワードをハッシュし、バイナリ形式のhashedと一致するかどうか判定します。
+     * 
+     * @param pass UTF-8でエンコードされた平文パスワード
+     * @param hashed {@link #cryptBinary(String)}と同じ形式のパスワードハッシュ
+     * @return パスワードが一致すればtrue, そうでなければfalse
+     */
+    public static boolean passwordMatch(byte[] pass, byte[] hashed) {
+        PasswordHashMetrics m = metrics;
+        long start = (m == null) ? 0L : System.nanoTime();
+        int saltLen = parseBinarySaltLength(hashed);
+        int count = parseBinaryIterateCount(hashed);
+        byte[] res = stretcher.get().stretch(hashed, BINARY_HEADER_LENGTH,
+                saltLen, (pass == null) ? new byte[0] : pass, count);
+
+        // 一致しない位置によって処理時間が変わらないよう、全バイトを比較する
+        int diff = 0;
+        int off = BINARY_HEADER_LENGTH + saltLen;
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            diff |= res[i] ^ hashed[off + i];
+        }
+        boolean match = (diff == 0);
+        if (m != null) {
+            m.verified(System.nanoTime() - start, count, match);
+        }
+        return match;
+    }
+
+    /**
+     * バイナリ形式のhashedを、現在の設定で作成し直すべきかどうか判定します。
+     * 
+     * @param hashed {@link #cryptBinary(String)}と同じ形式のパスワードハッシュ
+     * @return 作成し直すべきであればtrue, そうでなければfalse
+     * @see #needsRehash(String)
+     */
+    public static boolean needsRehash(byte[] hashed) {
+        parseBinarySaltLength(hashed);
+        return parseBinaryIterateCount(hashed) < iterateCount;
+    }
+
+    /**
+     * 文字列形式(旧形式を含む)のパスワードハッシュを、バイナリ形式に変換します。<br>
+     * 変換後も、変換前と同じ平文パスワードで一致判定できます。
+     * 
+     * @param hashed {@link #passwordMatch(String, String)}と同じ形式のパスワードハッシュ
+     * @return {@link #cryptBinary(String)}と同じ形式のバイト列
+     */
+    public static byte[] toBinary(String hashed) {
+        int count;
+        int saltPos;
+        if (hashed != null && hashed.startsWith(VERSIONED_PREFIX)) {
+            saltPos = hashed.indexOf(SEPARATOR, VERSIONED_PREFIX.length()) + 1;
+            count = parseIterateCount(hashed, saltPos);
+        } else {
+            if (hashed == null || hashed.length() < SALT_LENGTH) {
+                throw new IllegalArgumentException("Bad hash data : " + hashed);
+            }
+            saltPos = 0;
+            count = DEFAULT_ITERATE_COUNT;
+        }
+        int hashPos = hashed.indexOf(SEPARATOR, saltPos) + 1;
+        if (hashPos <= saltPos) {
+            throw new IllegalArgumentException("Bad hash data : " + hashed);
+        }
+        byte[] salt = hashed.substring(saltPos, hashPos - 1).getBytes(
+                StandardCharsets.UTF_8);
+        byte[] hash = Base64.decodeBase64(hashed.substring(hashPos));
+        if (salt.length > 0xff || hash.length != HASH_LENGTH) {
+            throw new IllegalArgumentException("Bad hash data : " + hashed);
+        }
+        return toBinary(count, salt, 0, salt.length, hash);
     }
 
     /**
@@ -77,27 +464,163 @@ public class PasswordHashUtil {
      * @return
      */
     protected static String crypt(String src, String salt, int iterateCount) {
+        return crypt(src.getBytes(StandardCharsets.UTF_8), salt, iterateCount);
+    }
+
+    /**
+     * パスワードハッシュを取得する。
+     * 
+     * @param src
+     *            UTF-8でエンコードされた平文パスワード
+     * @param salt
+     *            salt文字列
+     * @param iterateCount
+     *            ストレッチングを行う回数
+     * @return
+     */
+    protected static String crypt(byte[] src, String salt, int iterateCount) {
 
         assert (iterateCount > 0);
 
+        byte[] saltBin = salt.getBytes(StandardCharsets.UTF_8);
+        byte[] res = stretcher.get().stretch(saltBin, 0, saltBin.length, src,
+                iterateCount);
+        return salt + "$" + Base64.encodeBase64String(res);
+    }
+
+    /**
+     * 回数を埋め込む形式のパスワードハッシュを取得する。
+     * 
+     * @param src
+     *            UTF-8でエンコードされた平文パスワード
+     * @param salt
+     *            salt文字列
+     * @param iterateCount
+     *            ストレッチングを行う回数
+     * @return $sha256$[ストレッチング回数]$[salt]$[ハッシュされたパスワード] 形式の文字列
+     */
+    protected static String cryptVersioned(byte[] src, String salt,
+            int iterateCount) {
+        return VERSIONED_PREFIX + iterateCount + SEPARATOR
+                + crypt(src, salt, iterateCount);
+    }
+
+    protected static String newSalt(int length) {
+        SecureRandom rnd = random.get();
+        char[] buf = new char[length];
+        for (int i = 0; i < length; i++) {
+            buf[i] = SALT_CHARS.charAt(rnd.nextInt(SALT_CHARS.length()));
+        }
+        return new String(buf);
+    }
+
+    private static byte[] toBinary(int count, byte[] salt, int saltOff,
+            int saltLen, byte[] hash) {
+        byte[] bin = new byte[BINARY_HEADER_LENGTH + saltLen + HASH_LENGTH];
+        bin[0] = BINARY_VERSION;
+        bin[1] = (byte) (count >>> 24);
+        bin[2] = (byte) (count >>> 16);
+        bin[3] = (byte) (count >>> 8);
+        bin[4] = (byte) count;
+        bin[5] = (byte) saltLen;
+        System.arraycopy(salt, saltOff, bin, BINARY_HEADER_LENGTH, saltLen);
+        System.arraycopy(hash, 0, bin, BINARY_HEADER_LENGTH + saltLen,
+                HASH_LENGTH);
+        return bin;
+    }
+
+    /** バイナリ形式のハッシュを検証し、saltの長さを返す */
+    private static int parseBinarySaltLength(byte[] hashed) {
+        if (hashed == null || hashed.length < BINARY_HEADER_LENGTH
+                || hashed[0] != BINARY_VERSION) {
+            throw new IllegalArgumentException("Bad hash data : "
+                    + Arrays.toString(hashed));
+        }
+        int saltLen = hashed[5] & 0xff;
+        if (hashed.length != BINARY_HEADER_LENGTH + saltLen + HASH_LENGTH
+                || parseBinaryIterateCount(hashed) <= 0) {
+            throw new IllegalArgumentException("Bad hash data : "
+                    + Arrays.toString(hashed));
+        }
+        return saltLen;
+    }
+
+    private static int parseBinaryIterateCount(byte[] hashed) {
+        return ((hashed[1] & 0xff) << 24) | ((hashed[2] & 0xff) << 16)
+                | ((hashed[3] & 0xff) << 8) | (hashed[4] & 0xff);
+    }
+
+    /** 回数を埋め込む形式のハッシュから、ストレッチング回数を取り出す。saltPosはsaltの開始位置 */
+    private static int parseIterateCount(String hashed, int saltPos) {
         try {
-            byte[] saltBin = salt.getBytes("UTF-8");
-            byte[] res = src.getBytes("UTF-8");
-            for (int i = 0; i < iterateCount; i++) {
-                byte[] cont = new byte[saltBin.length + res.length];
-                System.arraycopy(saltBin, 0, cont, 0, saltBin.length);
-                System.arraycopy(res, 0, cont, saltBin.length, res.length);
-                res = DigestUtils.sha256(cont);
+            if (saltPos <= VERSIONED_PREFIX.length()
+                    || hashed.indexOf(SEPARATOR, saltPos) < 0) {
+                throw new IllegalArgumentException("Bad hash data : " + hashed);
             }
-            return salt + "$" + (new Base64()).encodeToString(res);
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e.getMessage(), e);
+            int count = Integer.parseInt(hashed.substring(
+                    VERSIONED_PREFIX.length(), saltPos - 1));
+            if (count <= 0) {
+                throw new IllegalArgumentException("Bad hash data : " + hashed);
+            }
+            return count;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad hash data : " + hashed, e);
         }
+    }
 
+    /** char[]のパスワードを、String#getBytes("UTF-8")と同じUTF-8のバイト列に変換する */
+    static byte[] toBytes(char[] src) {
+        if (src == null) {
+            return new byte[0];
+        }
+        ByteBuffer bb = StandardCharsets.UTF_8.encode(CharBuffer.wrap(src));
+        byte[] bin = new byte[bb.remaining()];
+        bb.get(bin);
+        if (bb.hasArray()) {
+            Arrays.fill(bb.array(), (byte) 0);
+        }
+        return bin;
     }
 
-    protected static String newSalt(int length) {
-        return RandomStringUtils.random(length, SALT_CHARS);
+    /**
+     * ストレッチング処理。<br>
+     * salt＋直前のハッシュを連結した配列は作らず、MessageDigest#update()で順に与えてダイジェストを取る。
+     * 結果は作業領域に上書きするため、ループ中は新たなオブジェクトを生成しない。
+     */
+    private static final class Stretcher {
+
+        private final MessageDigest md;
+        private final byte[] buf;
+
+        Stretcher() {
+            try {
+                md = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+            buf = new byte[md.getDigestLength()];
+        }
+
+        /**
+         * ストレッチングを行う。戻り値は作業領域そのものなので、次の呼び出しまでに利用すること。
+         */
+        byte[] stretch(byte[] saltBin, int saltOff, int saltLen, byte[] src,
+                int iterateCount) {
+            try {
+                md.update(saltBin, saltOff, saltLen);
+                md.update(src);
+                md.digest(buf, 0, buf.length);
+                for (int i = 1; i < iterateCount; i++) {
+                    md.update(saltBin, saltOff, saltLen);
+                    md.update(buf);
+                    md.digest(buf, 0, buf.length);
+                }
+                return buf;
+            } catch (DigestException e) {
+                md.reset();
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        }
     }
 
 }
@@ -0,0 +1,223 @@
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * {@link PasswordHashUtil#passwordMatch(String, String)}の判定結果をキャッシュするクラス。<br>
+ * 同じ資格情報で何度も認証されるサービス間通信などで、ストレッチングの繰り返しを省くために利用します。<br>
+ * <br>
+ * キャッシュのキーは、インスタンスごとに生成した秘密鍵による平文パスワードとハッシュのHMAC-SHA256で、
+ * 平文パスワードそのものは保持しません。キャッシュするのは一致した結果のみで、
+ * 不一致の判定は毎回ストレッチングを行います(総当たり攻撃でキャッシュが溢れないようにするため)。<br>
+ * エントリはttlMillis経過すると無効になり、maxSizeを超えると最も古く参照されたものから破棄されます。<br>
+ * キャッシュにヒットした判定は、{@link PasswordHashMetrics#cacheHit(long)}で通知されます。
+ *
+ * <pre>
+ * {@code
+ * static final PasswordVerifyCache cache = new PasswordVerifyCache(10000, 60000);
+ * ...
+ * if (cache.passwordMatch(pass, hashed)) { ... }
+ * }
+ * </pre>
+ */
+public class PasswordVerifyCache {
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int KEY_LENGTH = 32;
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final SecretKeySpec key;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /** キャッシュ本体。値は有効期限(System.nanoTime()基準) */
+    private final LinkedHashMap<Key, Long> entries;
+
+    /** Macはスレッドセーフでないため、スレッドごとに保持する */
+    private final ThreadLocal<Mac> mac = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                Mac m = Mac.getInstance(MAC_ALGORITHM);
+                m.init(key);
+                return m;
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        }
+    };
+
+    /**
+     * @param maxSize キャッシュする最大件数
+     * @param ttlMillis キャッシュの有効期間(ミリ秒)
+     */
+    public PasswordVerifyCache(final int maxSize, long ttlMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Bad max size : " + maxSize);
+        }
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("Bad ttl : " + ttlMillis);
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlMillis * 1000000L;
+
+        byte[] k = new byte[KEY_LENGTH];
+        new SecureRandom().nextBytes(k);
+        this.key = new SecretKeySpec(k, MAC_ALGORITHM);
+        Arrays.fill(k, (byte) 0);
+
+        this.entries = new LinkedHashMap<Key, Long>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Long> eldest) {
+                return size() > PasswordVerifyCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * {@link PasswordHashUtil#passwordMatch(String, String)}と同じ判定を、キャッシュを利用して行います。
+     *
+     * @param pass 平文パスワード
+     * @param hashed パスワードハッシュ
+     * @return パスワードが一致すればtrue, そうでなければfalse
+     */
+    public boolean passwordMatch(String pass, String hashed) {
+        byte[] bin = ((pass == null) ? "" : pass)
+                .getBytes(StandardCharsets.UTF_8);
+        try {
+            return passwordMatch(bin, hashed);
+        } finally {
+            Arrays.fill(bin, (byte) 0);
+        }
+    }
+
+    /**
+     * {@link PasswordHashUtil#passwordMatch(char[], String)}と同じ判定を、キャッシュを利用して行います。
+     *
+     * @param pass 平文パスワード
+     * @param hashed パスワードハッシュ
+     * @return パスワードが一致すればtrue, そうでなければfalse
+     */
+    public boolean passwordMatch(char[] pass, String hashed) {
+        byte[] bin = PasswordHashUtil.toBytes(pass);
+        try {
+            return passwordMatch(bin, hashed);
+        } finally {
+            Arrays.fill(bin, (byte) 0);
+        }
+    }
+
+    /**
+     * {@link PasswordHashUtil#passwordMatch(byte[], String)}と同じ判定を、キャッシュを利用して行います。
+     *
+     * @param pass UTF-8でエンコードされた平文パスワード
+     * @param hashed パスワードハッシュ
+     * @return パスワードが一致すればtrue, そうでなければfalse
+     */
+    public boolean passwordMatch(byte[] pass, String hashed) {
+        if (hashed == null) {
+            throw new IllegalArgumentException("Bad hash data : " + hashed);
+        }
+        byte[] ps = (pass == null) ? new byte[0] : pass;
+        PasswordHashMetrics m = PasswordHashUtil.getMetrics();
+        long start = (m == null) ? 0L : System.nanoTime();
+
+        Key k = newKey(ps, hashed);
+        long now = System.nanoTime();
+        boolean hit = false;
+        synchronized (entries) {
+            Long expire = entries.get(k);
+            if (expire != null) {
+                if (expire - now > 0) {
+                    hit = true;
+                } else {
+                    entries.remove(k);
+                }
+            }
+        }
+        if (hit) {
+            hitCount.incrementAndGet();
+            if (m != null) {
+                m.cacheHit(System.nanoTime() - start);
+            }
+            return true;
+        }
+        missCount.incrementAndGet();
+
+        boolean match = PasswordHashUtil.passwordMatch(ps, hashed);
+        if (match) {
+            synchronized (entries) {
+                entries.put(k, now + ttlNanos);
+            }
+        }
+        return match;
+    }
+
+    /** キャッシュにヒットした回数 */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /** キャッシュにヒットしなかった回数 */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /** キャッシュされている件数(有効期限切れのものを含む) */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /** キャッシュを全て破棄します。パスワード変更時などに利用してください */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    // private methods -----------------------------------------
+
+    private Key newKey(byte[] pass, String hashed) {
+        Mac m = mac.get();
+        int len = pass.length;
+        // 平文とハッシュの境界を曖昧にしないよう、平文の長さを先頭に置く
+        m.update(new byte[] { (byte) (len >>> 24), (byte) (len >>> 16),
+                (byte) (len >>> 8), (byte) len });
+        m.update(pass);
+        m.update(hashed.getBytes(StandardCharsets.UTF_8));
+        return new Key(m.doFinal());
+    }
+
+    /** キャッシュのキー。HMACの値を保持する */
+    private static final class Key {
+        private final byte[] mac;
+        private final int hash;
+
+        Key(byte[] mac) {
+            this.mac = mac;
+            this.hash = Arrays.hashCode(mac);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof Key) && Arrays.equals(mac, ((Key) o).mac);
+        }
+    }
+}
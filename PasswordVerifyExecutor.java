@@ -0,0 +1,166 @@
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link PasswordHashUtil#passwordMatch(String, String)}を、専用のスレッドプールで非同期に実行するクラス。<br>
+ * 同時に実行する判定の数(maxInFlight)と、実行待ちにできる数(queueDepth)に上限を設け、
+ * 大量の認証要求が来てもハッシュ処理がCPUを使い切らないようにします。<br>
+ * 実行待ちが上限に達している場合は、待たずに{@link RejectedExecutionException}で失敗した
+ * CompletableFutureを返します。
+ *
+ * <pre>
+ * {@code
+ * PasswordVerifyExecutor verifier = new PasswordVerifyExecutor(4, 100);
+ * verifier.passwordMatch(pass, hashed).whenComplete((match, error) -> {
+ *     if (error != null) { // 混雑時は503などを返す
+ *     ...
+ * });
+ * ...
+ * verifier.close();
+ * }
+ * </pre>
+ */
+public class PasswordVerifyExecutor implements AutoCloseable {
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * @param maxInFlight 同時に実行する判定の最大数(スレッド数)
+     * @param queueDepth 実行待ちにできる判定の最大数
+     */
+    public PasswordVerifyExecutor(int maxInFlight, int queueDepth) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Bad max in-flight : "
+                    + maxInFlight);
+        }
+        if (queueDepth <= 0) {
+            throw new IllegalArgumentException("Bad queue depth : "
+                    + queueDepth);
+        }
+        executor = new ThreadPoolExecutor(maxInFlight, maxInFlight, 0L,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+                        queueDepth), new DaemonThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * {@link PasswordHashUtil#passwordMatch(String, String)}を非同期に実行します。
+     *
+     * @param pass 平文パスワード
+     * @param hashed パスワードハッシュ
+     * @return 判定結果。実行待ちが上限に達している場合は{@link RejectedExecutionException}で失敗する
+     */
+    public CompletableFuture<Boolean> passwordMatch(final String pass,
+            final String hashed) {
+        final CompletableFuture<Boolean> res = new CompletableFuture<Boolean>();
+        return submit(res, new Runnable() {
+            @Override
+            public void run() {
+                res.complete(PasswordHashUtil.passwordMatch(pass, hashed));
+            }
+        }, null);
+    }
+
+    /**
+     * {@link PasswordHashUtil#passwordMatch(char[], String)}を非同期に実行します。<br>
+     * passは判定後(実行待ちの上限により拒否した場合はその時点)に0で上書きされます。
+     *
+     * @param pass 平文パスワード
+     * @param hashed パスワードハッシュ
+     * @return 判定結果。実行待ちが上限に達している場合は{@link RejectedExecutionException}で失敗する
+     */
+    public CompletableFuture<Boolean> passwordMatch(final char[] pass,
+            final String hashed) {
+        final CompletableFuture<Boolean> res = new CompletableFuture<Boolean>();
+        return submit(res, new Runnable() {
+            @Override
+            public void run() {
+                boolean match;
+                try {
+                    match = PasswordHashUtil.passwordMatch(pass, hashed);
+                } finally {
+                    // 結果を受け取った側が、上書き前のpassを見ないよう先に上書きする
+                    if (pass != null) {
+                        Arrays.fill(pass, '\0');
+                    }
+                }
+                res.complete(match);
+            }
+        }, pass);
+    }
+
+    /** 実行中の判定の数 */
+    public int getInFlightCount() {
+        return executor.getActiveCount();
+    }
+
+    /** 実行待ちの判定の数 */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /** 実行待ちが上限に達していたため拒否した数 */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * 新しい判定の受付を止めます。受付済みの判定は実行されます。
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    // private methods -----------------------------------------
+
+    /**
+     * @param pass 拒否した場合に0で上書きする平文パスワード(不要ならnull)
+     */
+    private CompletableFuture<Boolean> submit(
+            final CompletableFuture<Boolean> res, final Runnable task,
+            char[] pass) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } catch (Throwable t) {
+                        res.completeExceptionally(t);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            if (pass != null) {
+                Arrays.fill(pass, '\0');
+            }
+            res.completeExceptionally(e);
+        }
+        return res;
+    }
+
+    /** 判定用のスレッドは、アプリケーションの終了を妨げないようデーモンスレッドにする */
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private static final AtomicInteger poolSeq = new AtomicInteger();
+        private final int pool = poolSeq.incrementAndGet();
+        private final AtomicInteger seq = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "password-verify-" + pool + "-"
+                    + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
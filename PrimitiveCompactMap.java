@@ -0,0 +1,158 @@
+import java.util.Arrays;
+
+/**
+ * {@link IntCompactMap}、{@link LongCompactMap}の共通部分。<br>
+ * 値の配列と、オープンアドレス法(線形探索)のスロットの探索を持つ。
+ * キーの配列とハッシュはサブクラスが持ち、intのキーはlongに拡張して扱う。
+ */
+abstract class PrimitiveCompactMap<V> {
+
+    /** nullの値を表す。空きスロットと区別するため */
+    private static final Object NULL_VALUE = new Object();
+
+    /** 値。nullのスロットは空き */
+    final Object[] values;
+    final int mask;
+    final int shift;
+    private final int size;
+
+    /**
+     * ビルダーの共通部分。同じキーを複数回putした場合は、最後の値が有効になる。
+     *
+     * @param <M> 作成するMapの型
+     */
+    abstract static class AbstractBuilder<V, M extends PrimitiveCompactMap<V>> {
+        private final Class<V> valueType;
+        /** 作成中の表。要素数はビルダーで数える */
+        private M table;
+        private int size = 0;
+
+        AbstractBuilder(Class<V> valueType, int expectedSize) {
+            if (valueType == null) {
+                throw new IllegalArgumentException("type is null.");
+            }
+            if (expectedSize < 0) {
+                throw new IllegalArgumentException("Bad expected size : "
+                        + expectedSize);
+            }
+            this.valueType = valueType;
+            this.table = newTable(CompactMap.tableSizeFor(expectedSize));
+        }
+
+        /** スロット数nの空の表を作成する */
+        abstract M newTable(int n);
+
+        /** 表の配列を複製し、要素数sizeのMapを作成する */
+        abstract M copyOf(M table, int size);
+
+        /**
+         * @exception ClassCastException valueTypeと異なる値を指定した場合に発生する。
+         */
+        final void add(long key, V value) {
+            valueType.cast(value);
+            if ((size + 1) * 100 > table.values.length
+                    * CompactMap.LOAD_FACTOR_PERCENT) {
+                rehash(2 * table.values.length);
+            }
+            if (table.insert(key, (value == null) ? NULL_VALUE : value)) {
+                size++;
+            }
+        }
+
+        final M finish() {
+            // 予想より少なかった場合は、必要な大きさに詰める
+            int n = CompactMap.tableSizeFor(size);
+            if (n < table.values.length) {
+                rehash(n);
+            }
+            return copyOf(table, size);
+        }
+
+        private void rehash(int n) {
+            M t = newTable(n);
+            for (int i = 0; i < table.values.length; i++) {
+                if (table.values[i] != null) {
+                    t.insert(table.keyAt(i), table.values[i]);
+                }
+            }
+            table = t;
+        }
+    }
+
+    PrimitiveCompactMap(Object[] values, int size) {
+        this.values = values;
+        this.mask = values.length - 1;
+        this.shift = 32 - Integer.numberOfTrailingZeros(values.length);
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public String toString() {
+        long[] ks = new long[size];
+        int n = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                ks[n++] = keyAt(i);
+            }
+        }
+        Arrays.sort(ks);
+        StringBuilder buf = new StringBuilder("{");
+        for (long k : ks) {
+            if (buf.length() > 1) {
+                buf.append(", ");
+            }
+            buf.append(k).append('=').append(valueAt(find(k)));
+        }
+        return buf.append('}').toString();
+    }
+
+    /** slotのキー */
+    abstract long keyAt(int slot);
+
+    /** slotにキーを格納する */
+    abstract void setKeyAt(int slot, long key);
+
+    /** キーから、探索を始めるスロット番号を求める */
+    abstract int slotOf(long key);
+
+    /** keyのスロット番号を返す。キーがない場合は-1を返す */
+    final int find(long key) {
+        for (int slot = slotOf(key);; slot = (slot + 1) & mask) {
+            if (values[slot] == null) {
+                return -1;
+            }
+            if (keyAt(slot) == key) {
+                return slot;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    final V valueAt(int slot) {
+        Object v = values[slot];
+        return (v == NULL_VALUE) ? null : (V) v;
+    }
+
+    /** キーが既にあれば値を置き換えてfalse、なければ追加してtrueを返す。ビルダーの作成中の表にのみ使う */
+    final boolean insert(long key, Object value) {
+        for (int slot = slotOf(key);; slot = (slot + 1) & mask) {
+            if (values[slot] == null) {
+                setKeyAt(slot, key);
+                values[slot] = value;
+                return true;
+            }
+            if (keyAt(slot) == key) {
+                values[slot] = value;
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,693 @@
+import java.math.BigDecimal;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * An immutable, precompiled description of a stored procedure/function call.<br>
+ * Unlike {@link StoredProcUtils}, the statement string, parameter order and
+ * types are fixed when the ProcedureCall is built, so each call only binds
+ * values by index with type-specific setters and reads OUT values into a
+ * fixed-slot {@link Result}. Build it once and keep it in a static field:
+ *
+ * <pre>
+ * {@code
+ * static final ProcedureCall GET_RATE = ProcedureCall
+ *     .function("RATE_PKG.GET_RATE", Types.NUMERIC)
+ *     .in("P_CURRENCY", Types.VARCHAR)
+ *     .in("P_DATE", Types.TIMESTAMP)
+ *     .out("P_SOURCE", Types.VARCHAR)
+ *     .build();
+ * ...
+ * ProcedureCall.Result res = GET_RATE.execute(conn, "USD", now);
+ * BigDecimal rate = (BigDecimal) res.getReturnValue();
+ * String source = (String) res.getOut("P_SOURCE");
+ * }
+ * </pre>
+ *
+ * To pass int/long/double values without boxing them, fill an {@link Args}
+ * instead of the Object array:
+ *
+ * <pre>
+ * {@code
+ * ProcedureCall.Args args = GET_STOCK.newArgs();
+ * for (...) {
+ *     ProcedureCall.Result res = GET_STOCK.execute(conn,
+ *             args.set(0, itemId).set(1, quantity));
+ * }
+ * }
+ * </pre>
+ *
+ * BOOLEAN parameters are not supported, because StoredProcUtils writes them
+ * into the statement as literals.
+ */
+public final class ProcedureCall {
+
+    private static final Logger logger =
+            Logger.getLogger(ProcedureCall.class.getName());
+
+    private final String procedureName;
+    private final int returnType;
+    private final String[] names;
+    private final int[] types;
+    private final StoredProcUtils.InOut[] ios;
+    /** JDBC parameter index of each parameter */
+    private final int[] indexes;
+    /** Result slot of each parameter, or -1 for IN parameters */
+    private final int[] outSlots;
+    private final String[] outNames;
+    private final int inCount;
+    private final String stmtStr;
+    /** Parameter names, types and IN/OUT, for the slow-call log */
+    private final String shape;
+
+    /**
+     * Start building a call of a stored function that returns value.
+     *
+     * @param procedureName
+     *            Name of function (ex. "AAA_PKG.BBB_FUNC")
+     * @param returnType
+     *            Type of return value (defined on jdbc.sql.Types)
+     * @return Builder
+     */
+    public static Builder function(String procedureName, int returnType) {
+        if (returnType == Types.NULL) {
+            throw new IllegalArgumentException("returnType is Types.NULL.");
+        }
+        return new Builder(procedureName, returnType);
+    }
+
+    /**
+     * Start building a call of a stored procedure (without return-value).
+     *
+     * @param procedureName
+     *            Name of procedure (ex. "AAA_PKG.BBB_PROC")
+     * @return Builder
+     */
+    public static Builder procedure(String procedureName) {
+        return new Builder(procedureName, Types.NULL);
+    }
+
+    /**
+     * Builder of ProcedureCall. Parameters are bound in the order they are
+     * added.
+     */
+    public static class Builder {
+        private final String procedureName;
+        private final int returnType;
+        private final List<String> names = new ArrayList<String>();
+        private final List<Integer> types = new ArrayList<Integer>();
+        private final List<StoredProcUtils.InOut> ios =
+                new ArrayList<StoredProcUtils.InOut>();
+
+        private Builder(String procedureName, int returnType) {
+            if (procedureName == null || procedureName.equals("")) {
+                throw new IllegalArgumentException(
+                        "procedureName is null or empty.");
+            }
+            this.procedureName = procedureName;
+            this.returnType = returnType;
+        }
+
+        public Builder in(String name, int type) {
+            return param(name, type, StoredProcUtils.InOut.IN);
+        }
+
+        public Builder out(String name, int type) {
+            return param(name, type, StoredProcUtils.InOut.OUT);
+        }
+
+        public Builder inOut(String name, int type) {
+            return param(name, type, StoredProcUtils.InOut.INOUT);
+        }
+
+        public Builder param(String name, int type, StoredProcUtils.InOut io) {
+            if (name == null || name.equals("")) {
+                throw new IllegalArgumentException("name is null or empty.");
+            }
+            if (names.contains(name)) {
+                throw new IllegalArgumentException("duplicate parameter: "
+                        + name);
+            }
+            if (type == Types.BOOLEAN) {
+                throw new IllegalArgumentException(
+                        "BOOLEAN parameter is not supported: " + name);
+            }
+            names.add(name);
+            types.add(type);
+            ios.add((io == null) ? StoredProcUtils.InOut.IN : io);
+            return this;
+        }
+
+        public ProcedureCall build() {
+            return new ProcedureCall(this);
+        }
+    }
+
+    /**
+     * Return-value and OUT parameter's values of one call.
+     */
+    public static final class Result {
+        private final ProcedureCall call;
+        private final Object returnValue;
+        private final Object[] outValues;
+
+        private Result(ProcedureCall call, Object returnValue,
+                Object[] outValues) {
+            this.call = call;
+            this.returnValue = returnValue;
+            this.outValues = outValues;
+        }
+
+        /**
+         * @return return-value of function (null for procedures)
+         */
+        public Object getReturnValue() {
+            return returnValue;
+        }
+
+        /**
+         * @param slot
+         *            Position among OUT/INOUT parameters, in declared order
+         *            (0 origin)
+         * @return value of the OUT parameter
+         */
+        public Object getOut(int slot) {
+            return outValues[slot];
+        }
+
+        /**
+         * @param name
+         *            Name of OUT/INOUT parameter
+         * @return value of the OUT parameter
+         */
+        public Object getOut(String name) {
+            return outValues[call.outSlotOf(name)];
+        }
+    }
+
+    /**
+     * Values of IN/INOUT parameters of one call, set by position with typed
+     * setters so that int/long/double values are not boxed. Values are kept
+     * after the call, so an Args can be reused and only the changed values
+     * set again. Not thread-safe: use one Args per thread.
+     */
+    public static final class Args {
+        private static final byte UNSET = 0;
+        private static final byte LONG = 1;
+        private static final byte DOUBLE = 2;
+        private static final byte OBJECT = 3;
+
+        private final ProcedureCall call;
+        private final byte[] kinds;
+        private final long[] longs;
+        private final double[] doubles;
+        private final Object[] objects;
+
+        private Args(ProcedureCall call) {
+            this.call = call;
+            this.kinds = new byte[call.inCount];
+            this.longs = new long[call.inCount];
+            this.doubles = new double[call.inCount];
+            this.objects = new Object[call.inCount];
+        }
+
+        /**
+         * @param index
+         *            Position among IN/INOUT parameters, in declared order
+         *            (0 origin)
+         * @param value
+         *            Value of the parameter
+         * @return this Args
+         */
+        public Args set(int index, int value) {
+            return set(index, (long) value);
+        }
+
+        /**
+         * @param index
+         *            Position among IN/INOUT parameters, in declared order
+         *            (0 origin)
+         * @param value
+         *            Value of the parameter
+         * @return this Args
+         */
+        public Args set(int index, long value) {
+            put(index, LONG, null);
+            longs[index] = value;
+            return this;
+        }
+
+        /**
+         * @param index
+         *            Position among IN/INOUT parameters, in declared order
+         *            (0 origin)
+         * @param value
+         *            Value of the parameter
+         * @return this Args
+         */
+        public Args set(int index, double value) {
+            put(index, DOUBLE, null);
+            doubles[index] = value;
+            return this;
+        }
+
+        /**
+         * @param index
+         *            Position among IN/INOUT parameters, in declared order
+         *            (0 origin)
+         * @param value
+         *            Value of the parameter (null for SQL NULL)
+         * @return this Args
+         */
+        public Args set(int index, Object value) {
+            put(index, OBJECT, value);
+            return this;
+        }
+
+        /**
+         * @param index
+         *            Position among IN/INOUT parameters, in declared order
+         *            (0 origin)
+         * @return this Args
+         */
+        public Args setNull(int index) {
+            return set(index, (Object) null);
+        }
+
+        private void put(int index, byte kind, Object value) {
+            if (index < 0 || index >= kinds.length) {
+                throw new IllegalArgumentException("Bad index : " + index);
+            }
+            kinds[index] = kind;
+            objects[index] = value;
+        }
+
+        private void check(ProcedureCall c) {
+            if (call != c) {
+                throw new IllegalArgumentException("args of " + call
+                        + " are passed to " + c);
+            }
+            for (int i = 0; i < kinds.length; i++) {
+                if (kinds[i] == UNSET) {
+                    throw new IllegalArgumentException("IN value " + i
+                            + " is not set: " + call);
+                }
+            }
+        }
+
+        private void bind(CallableStatement stmt, int in, int index, int type)
+                throws SQLException {
+            switch (kinds[in]) {
+            case LONG:
+                bindLong(stmt, index, type, longs[in]);
+                return;
+            case DOUBLE:
+                bindDouble(stmt, index, type, doubles[in]);
+                return;
+            default:
+                ProcedureCall.bind(stmt, index, type, objects[in]);
+            }
+        }
+    }
+
+    private ProcedureCall(Builder b) {
+        this.procedureName = b.procedureName;
+        this.returnType = b.returnType;
+        this.names = b.names.toArray(new String[b.names.size()]);
+        this.types = new int[names.length];
+        this.ios = b.ios.toArray(new StoredProcUtils.InOut[names.length]);
+        this.indexes = new int[names.length];
+        this.outSlots = new int[names.length];
+
+        List<String> outs = new ArrayList<String>();
+        int ins = 0;
+        int index = isFunction() ? 2 : 1;
+        StringBuilder buf = new StringBuilder();
+        StringBuilder shapeBuf = new StringBuilder();
+        for (int i = 0; i < names.length; i++) {
+            types[i] = b.types.get(i);
+            indexes[i] = index++;
+            if (ios[i] != StoredProcUtils.InOut.IN) {
+                outSlots[i] = outs.size();
+                outs.add(names[i]);
+            } else {
+                outSlots[i] = -1;
+            }
+            if (ios[i] != StoredProcUtils.InOut.OUT) {
+                ins++;
+            }
+            if (buf.length() > 0) {
+                buf.append(",");
+            }
+            buf.append(names[i]).append(" => ?");
+            if (shapeBuf.length() > 0) {
+                shapeBuf.append(", ");
+            }
+            shapeBuf.append(names[i]).append(' ').append(ios[i]).append(':')
+                    .append(types[i]);
+        }
+        this.shape = shapeBuf.toString();
+        this.outNames = outs.toArray(new String[outs.size()]);
+        this.inCount = ins;
+        this.stmtStr = "begin " + (isFunction() ? "? := " : "")
+                + procedureName + "(" + buf + "); end;";
+    }
+
+    /**
+     * @return new Args to pass IN/INOUT values of this call to
+     *         {@link #execute(Connection, Args)}
+     */
+    public Args newArgs() {
+        return new Args(this);
+    }
+
+    /**
+     * Execute the call.
+     *
+     * @param conn
+     *            JDBC Connection
+     * @param inValues
+     *            Values of IN/INOUT parameters, in declared order
+     * @return return-value and OUT parameter's values
+     */
+    public Result execute(Connection conn, Object... inValues) {
+        checkInValues(inValues);
+        return run(conn, inValues, null);
+    }
+
+    /**
+     * Execute the call with values set in {@code args}.
+     *
+     * @param conn
+     *            JDBC Connection
+     * @param args
+     *            Values of IN/INOUT parameters, created by {@link #newArgs()}
+     * @return return-value and OUT parameter's values
+     */
+    public Result execute(Connection conn, Args args) {
+        checkArgs(args);
+        return run(conn, null, args);
+    }
+
+    /**
+     * Execute the call, reusing a statement cached in {@code cache}.
+     *
+     * @param cache
+     *            Statement cache of the connection to use
+     * @param inValues
+     *            Values of IN/INOUT parameters, in declared order
+     * @return return-value and OUT parameter's values
+     */
+    public Result execute(StoredProcUtils.StatementCache cache,
+            Object... inValues) {
+        checkInValues(inValues);
+        return run(cache, inValues, null);
+    }
+
+    /**
+     * Execute the call with values set in {@code args}, reusing a statement
+     * cached in {@code cache}.
+     *
+     * @param cache
+     *            Statement cache of the connection to use
+     * @param args
+     *            Values of IN/INOUT parameters, created by {@link #newArgs()}
+     * @return return-value and OUT parameter's values
+     */
+    public Result execute(StoredProcUtils.StatementCache cache, Args args) {
+        checkArgs(args);
+        return run(cache, null, args);
+    }
+
+    public String getProcedureName() {
+        return procedureName;
+    }
+
+    /**
+     * @return statement string sent to the database
+     */
+    public String getStatement() {
+        return stmtStr;
+    }
+
+    @Override
+    public String toString() {
+        return "ProcedureCall[" + stmtStr + "]";
+    }
+
+    // private methods -----------------------------------------
+
+    private boolean isFunction() {
+        return returnType != Types.NULL;
+    }
+
+    private void checkInValues(Object[] inValues) {
+        int n = (inValues == null) ? 0 : inValues.length;
+        if (n != inCount) {
+            throw new IllegalArgumentException("expected " + inCount
+                    + " IN values but got " + n + ": " + this);
+        }
+    }
+
+    private void checkArgs(Args args) {
+        if (args == null) {
+            throw new IllegalArgumentException("args is null.");
+        }
+        args.check(this);
+    }
+
+    private int outSlotOf(String name) {
+        for (int i = 0; i < outNames.length; i++) {
+            if (outNames[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("no OUT parameter: " + name);
+    }
+
+    /** Either inValues or args holds the IN/INOUT values */
+    private Result run(Connection conn, Object[] inValues, Args args) {
+        if (conn == null) {
+            throw new IllegalArgumentException("connection is null.");
+        }
+        StoredProcUtils.CallTimer timer = StoredProcUtils.CallTimer.start();
+        CallableStatement stmt = null;
+        boolean success = false;
+        try {
+            stmt = conn.prepareCall(stmtStr);
+            Result res = execute(stmt, inValues, args, timer);
+            success = true;
+            return res;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (timer != null) {
+                timer.finish(procedureName, shape, success);
+            }
+            if (stmt != null) {
+                try {
+                    stmt.close();
+                } catch (SQLException e) {
+                    logger.warning("SQLException when close statement:"
+                            + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private Result run(StoredProcUtils.StatementCache cache,
+            Object[] inValues, Args args) {
+        if (cache == null) {
+            throw new IllegalArgumentException("statement cache is null.");
+        }
+        StoredProcUtils.CallTimer timer = StoredProcUtils.CallTimer.start();
+        boolean success = false;
+        try {
+            Result res = execute(cache.prepareCall(stmtStr), inValues, args,
+                    timer);
+            success = true;
+            return res;
+        } catch (SQLException e) {
+            cache.invalidate(stmtStr);
+            throw new RuntimeException(e);
+        } finally {
+            if (timer != null) {
+                timer.finish(procedureName, shape, success);
+            }
+        }
+    }
+
+    private Result execute(CallableStatement stmt, Object[] inValues,
+            Args args, StoredProcUtils.CallTimer timer) throws SQLException {
+        if (isFunction()) {
+            stmt.registerOutParameter(1, returnType);
+        }
+        int in = 0;
+        for (int i = 0; i < names.length; i++) {
+            if (ios[i] != StoredProcUtils.InOut.OUT) {
+                if (args != null) {
+                    args.bind(stmt, in++, indexes[i], types[i]);
+                } else {
+                    bind(stmt, indexes[i], types[i], inValues[in++]);
+                }
+            }
+            if (ios[i] != StoredProcUtils.InOut.IN) {
+                stmt.registerOutParameter(indexes[i], types[i]);
+            }
+        }
+
+        if (timer != null) {
+            timer.prepared();
+        }
+        stmt.execute();
+        if (timer != null) {
+            timer.executed();
+        }
+
+        Object ret = isFunction() ? read(stmt, 1, returnType) : null;
+        Object[] outValues = new Object[outNames.length];
+        for (int i = 0; i < names.length; i++) {
+            if (outSlots[i] >= 0) {
+                outValues[outSlots[i]] = read(stmt, indexes[i], types[i]);
+            }
+        }
+        return new Result(this, ret, outValues);
+    }
+
+    private static void bind(CallableStatement stmt, int index, int type,
+            Object v) throws SQLException {
+        if (v == null) {
+            stmt.setNull(index, type);
+            return;
+        }
+        switch (type) {
+        case Types.CHAR:
+        case Types.VARCHAR:
+        case Types.LONGVARCHAR:
+        case Types.NCHAR:
+        case Types.NVARCHAR:
+            stmt.setString(index, v.toString());
+            return;
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+            stmt.setInt(index, ((Number) v).intValue());
+            return;
+        case Types.BIGINT:
+            stmt.setLong(index, ((Number) v).longValue());
+            return;
+        case Types.REAL:
+        case Types.FLOAT:
+        case Types.DOUBLE:
+            stmt.setDouble(index, ((Number) v).doubleValue());
+            return;
+        case Types.NUMERIC:
+        case Types.DECIMAL:
+            if (v instanceof BigDecimal) {
+                stmt.setBigDecimal(index, (BigDecimal) v);
+            } else if (v instanceof Long || v instanceof Integer
+                    || v instanceof Short || v instanceof Byte) {
+                stmt.setLong(index, ((Number) v).longValue());
+            } else {
+                stmt.setObject(index, v, type);
+            }
+            return;
+        case Types.TIMESTAMP:
+            stmt.setTimestamp(index, (v instanceof Timestamp) ? (Timestamp) v
+                    : new Timestamp(((java.util.Date) v).getTime()));
+            return;
+        case Types.DATE:
+            stmt.setDate(index,
+                    (v instanceof java.sql.Date) ? (java.sql.Date) v
+                            : new java.sql.Date(((java.util.Date) v).getTime()));
+            return;
+        default:
+            stmt.setObject(index, v, type);
+        }
+    }
+
+    private static void bindLong(CallableStatement stmt, int index,
+            int type, long v) throws SQLException {
+        switch (type) {
+        case Types.CHAR:
+        case Types.VARCHAR:
+        case Types.LONGVARCHAR:
+        case Types.NCHAR:
+        case Types.NVARCHAR:
+            stmt.setString(index, Long.toString(v));
+            return;
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+            stmt.setInt(index, (int) v);
+            return;
+        case Types.REAL:
+        case Types.FLOAT:
+        case Types.DOUBLE:
+            stmt.setDouble(index, v);
+            return;
+        case Types.BIGINT:
+        case Types.NUMERIC:
+        case Types.DECIMAL:
+            stmt.setLong(index, v);
+            return;
+        default:
+            bind(stmt, index, type, Long.valueOf(v));
+        }
+    }
+
+    private static void bindDouble(CallableStatement stmt, int index,
+            int type, double v) throws SQLException {
+        switch (type) {
+        case Types.CHAR:
+        case Types.VARCHAR:
+        case Types.LONGVARCHAR:
+        case Types.NCHAR:
+        case Types.NVARCHAR:
+            stmt.setString(index, Double.toString(v));
+            return;
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+            stmt.setInt(index, (int) v);
+            return;
+        case Types.BIGINT:
+            stmt.setLong(index, (long) v);
+            return;
+        case Types.REAL:
+        case Types.FLOAT:
+        case Types.DOUBLE:
+            stmt.setDouble(index, v);
+            return;
+        default:
+            bind(stmt, index, type, Double.valueOf(v));
+        }
+    }
+
+    private static Object read(CallableStatement stmt, int index, int type)
+            throws SQLException {
+        switch (type) {
+        case Types.CHAR:
+        case Types.VARCHAR:
+        case Types.LONGVARCHAR:
+        case Types.NCHAR:
+        case Types.NVARCHAR:
+            return stmt.getString(index);
+        case Types.NUMERIC:
+        case Types.DECIMAL:
+            return stmt.getBigDecimal(index);
+        case Types.TIMESTAMP:
+            return stmt.getTimestamp(index);
+        case Types.DATE:
+            return stmt.getDate(index);
+        default:
+            return stmt.getObject(index);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+/**
+ * Asynchronous execution of {@link StoredProcUtils} calls.<br>
+ * Each call borrows a connection from the DataSource, runs on a bounded
+ * thread pool and completes a CompletableFuture, so that independent calls can
+ * be issued in parallel:
+ *
+ * <pre>
+ * {@code
+ * StoredProcExecutor exec = new StoredProcExecutor(ds, 8, 100, 4);
+ * CompletableFuture<Object> a = exec.callStoredFuncOnlyInParam("PKG.F1", p1, Types.VARCHAR);
+ * CompletableFuture<Object> b = exec.callStoredFuncOnlyInParam("PKG.F2", p2, Types.NUMERIC);
+ * CompletableFuture.allOf(a, b).join();
+ * }
+ * </pre>
+ *
+ * The number of threads should not exceed the size of the DataSource's
+ * connection pool. In addition, at most {@code perProcedureLimit} calls of the
+ * same procedure run at once; further calls wait (without holding a thread or
+ * a connection) until one of them finishes. At most {@code queueDepth} calls
+ * of one procedure can wait. When that limit or the executor's queue is
+ * full, or the executor is closed, the returned future fails with
+ * RejectedExecutionException.
+ */
+public class StoredProcExecutor implements AutoCloseable {
+
+    private final DataSource dataSource;
+    private final ThreadPoolExecutor executor;
+    private final int defaultLimit;
+    private final int queueDepth;
+    /** Calls accepted but not yet handed to the executor */
+    private final AtomicInteger waitingCount = new AtomicInteger();
+    private volatile boolean closed = false;
+    private final ConcurrentMap<String, Integer> limits =
+            new ConcurrentHashMap<String, Integer>();
+    private final ConcurrentMap<String, Gate> gates =
+            new ConcurrentHashMap<String, Gate>();
+
+    /**
+     * @param dataSource
+     *            DataSource to borrow connections from
+     * @param threads
+     *            Number of calls running at once (and connections in use)
+     * @param queueDepth
+     *            Number of calls that can wait for a thread, and number of
+     *            calls of one procedure that can wait for its limit
+     * @param perProcedureLimit
+     *            Default number of calls of one procedure running at once
+     */
+    public StoredProcExecutor(DataSource dataSource, int threads,
+            int queueDepth, int perProcedureLimit) {
+        if (dataSource == null) {
+            throw new IllegalArgumentException("dataSource is null.");
+        }
+        if (threads <= 0 || queueDepth <= 0 || perProcedureLimit <= 0) {
+            throw new IllegalArgumentException("bad limits: threads=" + threads
+                    + ", queueDepth=" + queueDepth + ", perProcedureLimit="
+                    + perProcedureLimit);
+        }
+        this.dataSource = dataSource;
+        this.defaultLimit = perProcedureLimit;
+        this.queueDepth = queueDepth;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+                        queueDepth), new DaemonThreadFactory());
+    }
+
+    /**
+     * Set the number of calls of a procedure running at once. Calls already
+     * issued keep the previous limit, so call this before using the
+     * procedure.
+     *
+     * @param procedureName
+     *            Name of procedure or function (ex. "AAA_PKG.BBB_FUNC")
+     * @param limit
+     *            Number of calls running at once
+     */
+    public void setProcedureLimit(String procedureName, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("bad limit: " + limit);
+        }
+        limits.put(procedureName, limit);
+        gates.remove(procedureName);
+    }
+
+    /**
+     * Asynchronous version of
+     * {@link StoredProcUtils#callStoredFunction(Connection, String, Map, int)}.
+     */
+    public CompletableFuture<Map<String, Object>> callStoredFunction(
+            final String procedureName,
+            final Map<String, StoredProcUtils.BindParam> bindParams,
+            final int returnType) {
+        return submit(procedureName, new ConnectionTask<Map<String, Object>>() {
+            @Override
+            public Map<String, Object> call(Connection conn) {
+                return StoredProcUtils.callStoredFunction(conn, procedureName,
+                        bindParams, returnType);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of
+     * {@link StoredProcUtils#callStoredProcedure(Connection, String, Map)}.
+     */
+    public CompletableFuture<Map<String, Object>> callStoredProcedure(
+            final String procedureName,
+            final Map<String, StoredProcUtils.BindParam> bindParams) {
+        return submit(procedureName, new ConnectionTask<Map<String, Object>>() {
+            @Override
+            public Map<String, Object> call(Connection conn) {
+                return StoredProcUtils.callStoredProcedure(conn, procedureName,
+                        bindParams);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of
+     * {@link StoredProcUtils#callStoredFuncOnlyInParam(Connection, String, Map, int)}.
+     */
+    public CompletableFuture<Object> callStoredFuncOnlyInParam(
+            final String procedureName, final Map<String, Object> paramValues,
+            final int returnType) {
+        return submit(procedureName, new ConnectionTask<Object>() {
+            @Override
+            public Object call(Connection conn) {
+                return StoredProcUtils.callStoredFuncOnlyInParam(conn,
+                        procedureName, paramValues, returnType);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of
+     * {@link StoredProcUtils#callStoredProcOnlyInParam(Connection, String, Map)}.
+     */
+    public CompletableFuture<Void> callStoredProcOnlyInParam(
+            final String procedureName, final Map<String, Object> paramValues) {
+        return submit(procedureName, new ConnectionTask<Void>() {
+            @Override
+            public Void call(Connection conn) {
+                StoredProcUtils.callStoredProcOnlyInParam(conn, procedureName,
+                        paramValues);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Stop accepting new calls. Calls already accepted, including those
+     * waiting for their procedure's limit, are executed; the threads stop
+     * when the last of them has been handed to the executor.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (waitingCount.get() == 0) {
+            executor.shutdown();
+        }
+    }
+
+    // private methods -----------------------------------------
+
+    /** A call that runs with a borrowed connection */
+    private interface ConnectionTask<T> {
+        T call(Connection conn);
+    }
+
+    /**
+     * Limits the calls of one procedure running at once. Calls over the limit
+     * wait in {@code waiting} and are handed to the executor when a running
+     * call finishes.
+     */
+    private static final class Gate {
+        private final Semaphore permits;
+        private final Queue<Pending<?>> waiting =
+                new ConcurrentLinkedQueue<Pending<?>>();
+        /** Size of {@code waiting}, bounded by queueDepth */
+        private final AtomicInteger size = new AtomicInteger();
+
+        Gate(int limit) {
+            this.permits = new Semaphore(limit);
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(String procedureName,
+            final ConnectionTask<T> task) {
+        if (procedureName == null || procedureName.equals("")) {
+            throw new IllegalArgumentException(
+                    "procedureName is null or empty.");
+        }
+        final Pending<T> p = new Pending<T>(new Callable<T>() {
+            @Override
+            public T call() throws SQLException {
+                Connection conn = dataSource.getConnection();
+                try {
+                    return task.call(conn);
+                } finally {
+                    conn.close();
+                }
+            }
+        });
+        Gate gate = gateOf(procedureName);
+        if (gate.size.incrementAndGet() > queueDepth) {
+            gate.size.decrementAndGet();
+            p.future.completeExceptionally(new RejectedExecutionException(
+                    "too many calls waiting for " + procedureName));
+            return p.future;
+        }
+        // counted before checking closed, so that close() either sees this
+        // call or this call sees closed
+        waitingCount.incrementAndGet();
+        if (closed) {
+            gate.size.decrementAndGet();
+            handedOver();
+            p.future.completeExceptionally(new RejectedExecutionException(
+                    "executor is closed."));
+            return p.future;
+        }
+        gate.waiting.add(p);
+        drain(gate);
+        return p.future;
+    }
+
+    private Gate gateOf(String procedureName) {
+        Gate gate = gates.get(procedureName);
+        if (gate == null) {
+            Integer limit = limits.get(procedureName);
+            Gate newGate = new Gate((limit != null) ? limit : defaultLimit);
+            gate = gates.putIfAbsent(procedureName, newGate);
+            if (gate == null) {
+                gate = newGate;
+            }
+        }
+        return gate;
+    }
+
+    /**
+     * Hand waiting calls to the executor while permits are available. A
+     * call rejected by the executor fails immediately.
+     */
+    private void drain(final Gate gate) {
+        while (!gate.waiting.isEmpty() && gate.permits.tryAcquire()) {
+            final Pending<?> p = gate.waiting.poll();
+            if (p == null) {
+                gate.permits.release();
+                break;
+            }
+            gate.size.decrementAndGet();
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            p.run();
+                        } finally {
+                            gate.permits.release();
+                            drain(gate);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                gate.permits.release();
+                p.future.completeExceptionally(e);
+            } finally {
+                handedOver();
+            }
+        }
+    }
+
+    /**
+     * A call left the waiting state. The executor is shut down after the
+     * last waiting call once closed.
+     */
+    private void handedOver() {
+        if (waitingCount.decrementAndGet() == 0 && closed) {
+            executor.shutdown();
+        }
+    }
+
+    /** A call waiting for its procedure's permit, and its result */
+    private static final class Pending<T> implements Runnable {
+        private final Callable<T> body;
+        private final CompletableFuture<T> future = new CompletableFuture<T>();
+
+        Pending(Callable<T> body) {
+            this.body = body;
+        }
+
+        @Override
+        public void run() {
+            try {
+                future.complete(body.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+
+    /** Threads should not keep the application running */
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private static final AtomicInteger poolSeq = new AtomicInteger();
+        private final int pool = poolSeq.incrementAndGet();
+        private final AtomicInteger seq = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "stored-proc-" + pool + "-"
+                    + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * Receives the timing of each {@link StoredProcUtils} and {@link ProcedureCall}
+ * call. Each executeBatch of
+ * {@link StoredProcUtils#callStoredProcBatch} is reported as one call.<br>
+ * Set it with {@link StoredProcUtils#setMetrics(StoredProcMetrics)}. It is
+ * called on the caller's thread, so implementations must be fast and must not
+ * throw.
+ * 
+ * @see StoredProcStats
+ */
+public interface StoredProcMetrics {
+
+    /**
+     * Called when a call of a stored procedure/function has finished.
+     * 
+     * @param procedureName
+     *            Name of procedure or function
+     * @param prepareNanos
+     *            Time to prepare the statement and bind parameters
+     * @param executeNanos
+     *            Time to execute the statement
+     * @param extractNanos
+     *            Time to read return-value and OUT parameters
+     * @param success
+     *            false if the call failed with an exception
+     */
+    void called(String procedureName, long prepareNanos, long executeNanos,
+            long extractNanos, boolean success);
+}
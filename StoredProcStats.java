@@ -0,0 +1,167 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * {@link StoredProcMetrics} that keeps call counts, error counts and
+ * prepare/execute/extract latency histograms per procedure.<br>
+ * The numbers can be read over JMX (MBean name {@value #OBJECT_NAME}). To
+ * enable it, call at application startup:
+ * 
+ * <pre>
+ * {@code
+ * StoredProcStats.install();
+ * }
+ * </pre>
+ */
+public class StoredProcStats implements StoredProcMetrics, StoredProcStatsMBean {
+
+    /** MBean name */
+    public static final String OBJECT_NAME = "StoredProcUtils:type=StoredProcStats";
+
+    private final ConcurrentMap<String, ProcStats> procs =
+            new ConcurrentHashMap<String, ProcStats>();
+
+    /** Numbers of one procedure */
+    private static final class ProcStats {
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final LatencyHistogram prepare = new LatencyHistogram();
+        private final LatencyHistogram execute = new LatencyHistogram();
+        private final LatencyHistogram extract = new LatencyHistogram();
+    }
+
+    /**
+     * Create a StoredProcStats, register it to the platform MBeanServer and
+     * set it as the metrics hook of {@link StoredProcUtils}.
+     * 
+     * @return the installed StoredProcStats
+     */
+    public static StoredProcStats install() {
+        StoredProcStats stats = new StoredProcStats();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(stats, name);
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+        StoredProcUtils.setMetrics(stats);
+        return stats;
+    }
+
+    @Override
+    public void called(String procedureName, long prepareNanos,
+            long executeNanos, long extractNanos, boolean success) {
+        ProcStats p = procs.get(procedureName);
+        if (p == null) {
+            ProcStats newP = new ProcStats();
+            p = procs.putIfAbsent(procedureName, newP);
+            if (p == null) {
+                p = newP;
+            }
+        }
+        p.calls.incrementAndGet();
+        if (!success) {
+            p.errors.incrementAndGet();
+        }
+        p.prepare.record(prepareNanos);
+        p.execute.record(executeNanos);
+        p.extract.record(extractNanos);
+    }
+
+    @Override
+    public String[] getProcedureNames() {
+        return new TreeMap<String, ProcStats>(procs).keySet().toArray(
+                new String[0]);
+    }
+
+    @Override
+    public long getTotalCallCount() {
+        long c = 0;
+        for (ProcStats p : procs.values()) {
+            c += p.calls.get();
+        }
+        return c;
+    }
+
+    @Override
+    public long getTotalErrorCount() {
+        long c = 0;
+        for (ProcStats p : procs.values()) {
+            c += p.errors.get();
+        }
+        return c;
+    }
+
+    @Override
+    public long getCallCount(String procedureName) {
+        ProcStats p = procs.get(procedureName);
+        return (p == null) ? 0L : p.calls.get();
+    }
+
+    @Override
+    public long getErrorCount(String procedureName) {
+        ProcStats p = procs.get(procedureName);
+        return (p == null) ? 0L : p.errors.get();
+    }
+
+    @Override
+    public long getPrepareLatencyMicros(String procedureName, double percentile) {
+        ProcStats p = procs.get(procedureName);
+        return (p == null) ? 0L : p.prepare.getPercentile(percentile) / 1000;
+    }
+
+    @Override
+    public long getExecuteLatencyMicros(String procedureName, double percentile) {
+        ProcStats p = procs.get(procedureName);
+        return (p == null) ? 0L : p.execute.getPercentile(percentile) / 1000;
+    }
+
+    @Override
+    public long getExtractLatencyMicros(String procedureName, double percentile) {
+        ProcStats p = procs.get(procedureName);
+        return (p == null) ? 0L : p.extract.getPercentile(percentile) / 1000;
+    }
+
+    /**
+     * @return One line per procedure: counts and p50/p99 latency (us) of each
+     *         stage
+     */
+    @Override
+    public String[] dump() {
+        List<String> lines = new ArrayList<String>();
+        for (Map.Entry<String, ProcStats> e : new TreeMap<String, ProcStats>(
+                procs).entrySet()) {
+            ProcStats p = e.getValue();
+            lines.add(String.format(
+                    "%s calls=%d errors=%d prepare(p50/p99)=%d/%dus"
+                            + " execute(p50/p99)=%d/%dus extract(p50/p99)=%d/%dus",
+                    e.getKey(), p.calls.get(), p.errors.get(),
+                    p.prepare.getPercentile(50) / 1000,
+                    p.prepare.getPercentile(99) / 1000,
+                    p.execute.getPercentile(50) / 1000,
+                    p.execute.getPercentile(99) / 1000,
+                    p.extract.getPercentile(50) / 1000,
+                    p.extract.getPercentile(99) / 1000));
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    @Override
+    public void reset() {
+        procs.clear();
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * JMX interface of {@link StoredProcStats}.
+ */
+public interface StoredProcStatsMBean {
+
+    String[] getProcedureNames();
+
+    long getTotalCallCount();
+
+    long getTotalErrorCount();
+
+    long getCallCount(String procedureName);
+
+    long getErrorCount(String procedureName);
+
+    long getPrepareLatencyMicros(String procedureName, double percentile);
+
+    long getExecuteLatencyMicros(String procedureName, double percentile);
+
+    long getExtractLatencyMicros(String procedureName, double percentile);
+
+    String[] dump();
+
+    void reset();
+}
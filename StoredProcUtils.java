@@ -1,11 +1,30 @@
+import java.sql.BatchUpdateException;
 import java.sql.CallableStatement;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -18,6 +37,42 @@ public class StoredProcUtils {
 
     public static final String RETURN_KEY = "#RETURN#";
 
+    /**
+     * Type of REF CURSOR parameters on Oracle (oracle.jdbc.OracleTypes.CURSOR).
+     * Use this or java.sql.Types.REF_CURSOR as the type of a cursor
+     * BindParam.
+     */
+    public static final int ORACLE_CURSOR = -10;
+
+    /** Upper limit of the number of cached statement strings */
+    private static final int MAX_STMT_TEXT_CACHE_SIZE = 1024;
+
+    /** Statement strings, keyed by procedure name and parameter shape */
+    private static final ConcurrentMap<StmtKey, String> stmtTextCache =
+	    new ConcurrentHashMap<StmtKey, String>();
+
+    /**
+     * Signatures of procedures read from DatabaseMetaData, keyed by upper-case
+     * procedure name. Used only when setUseProcedureMetadata(true).
+     */
+    private static final ConcurrentMap<String, ProcSignature> signatureCache =
+	    new ConcurrentHashMap<String, ProcSignature>();
+
+    private static volatile boolean useProcedureMetadata = false;
+
+    /** Receives the timing of each call. null: not timed */
+    private static volatile StoredProcMetrics metrics;
+
+    /** Calls slower than this are logged. 0: disabled */
+    private static volatile long slowCallThresholdNanos = 0L;
+
+    /**
+     * Result caches of functions registered as cacheable, keyed by upper-case
+     * function name.
+     */
+    private static final ConcurrentMap<String, ResultCache> resultCaches =
+	    new ConcurrentHashMap<String, ResultCache>();
+
     static public enum InOut {
 	IN, OUT, INOUT
     }
@@ -44,145 +99,1146 @@ public class StoredProcUtils {
 	    return type;
 	}
 
-	public Object getValue() {
-	    return value;
+	public Object getValue() {
+	    return value;
+	}
+    }
+
+    /**
+     * Result of {@link StoredProcUtils#callStoredProcBatch}.
+     */
+    static public class BatchResult {
+	private final int rowCount;
+	private final List<int[]> updateCounts;
+	private final Map<Integer, SQLException> failures;
+	private final Map<Integer, IllegalArgumentException> rejectedRows;
+
+	private BatchResult(int rowCount, List<int[]> updateCounts,
+		Map<Integer, SQLException> failures,
+		Map<Integer, IllegalArgumentException> rejectedRows) {
+	    this.rowCount = rowCount;
+	    this.updateCounts = Collections.unmodifiableList(updateCounts);
+	    this.failures = Collections.unmodifiableMap(failures);
+	    this.rejectedRows = Collections.unmodifiableMap(rejectedRows);
+	}
+
+	/**
+	 * @return Number of rows submitted, including rejected rows
+	 */
+	public int getRowCount() {
+	    return rowCount;
+	}
+
+	/**
+	 * @return Number of executed batches
+	 */
+	public int getBatchCount() {
+	    return updateCounts.size();
+	}
+
+	/**
+	 * @param batchIndex
+	 *            Index of the batch (0 origin)
+	 * @return Update counts returned by executeBatch. For a batch that
+	 *         failed with a BatchUpdateException, the counts reported by the
+	 *         driver (may be shorter than the batch, or empty); for a batch
+	 *         that failed with another SQLException,
+	 *         Statement.EXECUTE_FAILED for each of its rows.
+	 */
+	public int[] getUpdateCounts(int batchIndex) {
+	    return updateCounts.get(batchIndex).clone();
+	}
+
+	/**
+	 * @return Map contains index of failed batch (key) and its exception
+	 *         (value)
+	 */
+	public Map<Integer, SQLException> getFailures() {
+	    return failures;
+	}
+
+	/**
+	 * @return Map contains index of row (key, 0 origin) that was not
+	 *         executed because its parameters cannot be batched, and the
+	 *         reason (value)
+	 */
+	public Map<Integer, IllegalArgumentException> getRejectedRows() {
+	    return rejectedRows;
+	}
+    }
+
+    /**
+     * Receives the rows of a cursor OUT parameter one by one.
+     * 
+     * @see StoredProcUtils#forEachCursorRow
+     */
+    static public interface RowHandler {
+	/**
+	 * @param rs
+	 *            ResultSet positioned on the current row. Do not call
+	 *            next() or close().
+	 */
+	void handle(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Rows of a cursor OUT parameter, read lazily from the database
+     * (fetchSize rows at a time). Each row is returned as a Map contains
+     * column label (key) and value. The statement stays open until this
+     * object is closed, so always use it in try-with-resources.
+     * 
+     * @see StoredProcUtils#openCursor
+     */
+    static public class CursorRows implements AutoCloseable,
+	    Iterator<Map<String, Object>> {
+	private final CallableStatement stmt;
+	private final ResultSet rs;
+	private final Map<String, Object> outValues;
+	private String[] labels;
+	private boolean fetched = false;
+	private boolean hasRow = false;
+
+	private CursorRows(CallableStatement stmt, ResultSet rs,
+		Map<String, Object> outValues) {
+	    this.stmt = stmt;
+	    this.rs = rs;
+	    this.outValues = outValues;
+	}
+
+	/**
+	 * @return Return-value and the values of the other OUT parameters
+	 *         (same as callStoredFunction)
+	 */
+	public Map<String, Object> getOutValues() {
+	    return outValues;
+	}
+
+	/**
+	 * @return the underlying ResultSet, to read columns without building
+	 *         a Map per row. null if the procedure returned a NULL cursor.
+	 */
+	public ResultSet getResultSet() {
+	    return rs;
+	}
+
+	@Override
+	public boolean hasNext() {
+	    if (rs == null) {
+		return false;
+	    }
+	    if (!fetched) {
+		try {
+		    hasRow = rs.next();
+		} catch (SQLException e) {
+		    throw new RuntimeException(e);
+		}
+		fetched = true;
+	    }
+	    return hasRow;
+	}
+
+	@Override
+	public Map<String, Object> next() {
+	    if (!hasNext()) {
+		throw new NoSuchElementException();
+	    }
+	    fetched = false;
+	    try {
+		if (labels == null) {
+		    ResultSetMetaData md = rs.getMetaData();
+		    labels = new String[md.getColumnCount()];
+		    for (int i = 0; i < labels.length; i++) {
+			labels[i] = md.getColumnLabel(i + 1);
+		    }
+		}
+		Map<String, Object> row =
+			new LinkedHashMap<String, Object>(labels.length * 2);
+		for (int i = 0; i < labels.length; i++) {
+		    row.put(labels[i], rs.getObject(i + 1));
+		}
+		return row;
+	    } catch (SQLException e) {
+		throw new RuntimeException(e);
+	    }
+	}
+
+	@Override
+	public void remove() {
+	    throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Close the cursor and the statement.
+	 */
+	@Override
+	public void close() {
+	    if (rs != null) {
+		try {
+		    rs.close();
+		} catch (SQLException e) {
+		    logger.warning("SQLException when close cursor:"
+			    + e.getMessage());
+		}
+	    }
+	    closeQuietly(stmt);
+	}
+    }
+
+    /**
+     * A per-connection cache of CallableStatements.<br>
+     * Statements are kept open and reused by the methods that take a
+     * StatementCache, so repeated calls only rebind and execute. When the
+     * cache is full, the least recently used statement is closed. Close the
+     * cache before (or together with) the connection:
+     * 
+     * <pre>
+     * {@code
+     * try (Connection conn = ds.getConnection();
+     *      StoredProcUtils.StatementCache cache =
+     *          new StoredProcUtils.StatementCache(conn, 32)) {
+     *     for (...) {
+     *         StoredProcUtils.callStoredProcOnlyInParam(cache, "AAA_PKG.BBB_PROC", params);
+     *     }
+     * }
+     * }
+     * </pre>
+     * 
+     * Like the connection itself, a StatementCache must not be shared
+     * between threads.
+     */
+    static public class StatementCache implements AutoCloseable {
+	private final Connection conn;
+	private final LinkedHashMap<String, CallableStatement> stmts;
+
+	/**
+	 * @param conn
+	 *            JDBC Connection
+	 * @param maxSize
+	 *            Maximum number of statements kept open
+	 */
+	public StatementCache(Connection conn, final int maxSize) {
+	    if (conn == null) {
+		throw new IllegalArgumentException("connection is null.");
+	    }
+	    if (maxSize <= 0) {
+		throw new IllegalArgumentException("bad cache size: " + maxSize);
+	    }
+	    this.conn = conn;
+	    this.stmts = new LinkedHashMap<String, CallableStatement>(16,
+		    0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+			Map.Entry<String, CallableStatement> eldest) {
+		    if (size() > maxSize) {
+			closeQuietly(eldest.getValue());
+			return true;
+		    }
+		    return false;
+		}
+	    };
+	}
+
+	public Connection getConnection() {
+	    return conn;
+	}
+
+	/**
+	 * Close all cached statements. The connection is not closed.
+	 */
+	@Override
+	public void close() {
+	    for (Iterator<CallableStatement> it = stmts.values().iterator(); it
+		    .hasNext();) {
+		closeQuietly(it.next());
+		it.remove();
+	    }
+	}
+
+	CallableStatement prepareCall(String stmtStr)
+		throws SQLException {
+	    CallableStatement stmt = stmts.get(stmtStr);
+	    if (stmt == null) {
+		stmt = conn.prepareCall(stmtStr);
+		stmts.put(stmtStr, stmt);
+	    } else {
+		stmt.clearParameters();
+	    }
+	    return stmt;
+	}
+
+	void invalidate(String stmtStr) {
+	    CallableStatement stmt = stmts.remove(stmtStr);
+	    if (stmt != null) {
+		closeQuietly(stmt);
+	    }
+	}
+    }
+
+    /**
+     * Cached return-values of a function registered with
+     * {@link StoredProcUtils#registerCacheableFunction(String, int, long)}.
+     * <br>
+     * Entries are keyed by the return type and the parameter values (with
+     * parameter names compared case-insensitively), expire after the TTL, and
+     * the least recently used entry is evicted when the cache is full. Failed
+     * calls are not cached.
+     */
+    static public class ResultCache {
+	/** Stands for a cached null return-value */
+	private static final Object NULL_RESULT = new Object();
+
+	private final String procedureName;
+	private final long ttlNanos;
+	private final LinkedHashMap<ResultKey, CachedResult> entries;
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	/** Incremented on invalidate(), so that calls running then are not cached */
+	private long generation = 0L;
+
+	private ResultCache(String procedureName, final int maxSize,
+		long ttlMillis) {
+	    this.procedureName = procedureName;
+	    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+	    this.entries = new LinkedHashMap<ResultKey, CachedResult>(16,
+		    0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+			Map.Entry<ResultKey, CachedResult> eldest) {
+		    return size() > maxSize;
+		}
+	    };
+	}
+
+	public String getProcedureName() {
+	    return procedureName;
+	}
+
+	/** Number of calls served from the cache */
+	public long getHitCount() {
+	    return hitCount.get();
+	}
+
+	/** Number of calls that went to the database */
+	public long getMissCount() {
+	    return missCount.get();
+	}
+
+	/**
+	 * @return hits / (hits + misses), or 0 if the function was not called
+	 */
+	public double getHitRatio() {
+	    long hits = hitCount.get();
+	    long total = hits + missCount.get();
+	    return (total == 0) ? 0.0 : (double) hits / total;
+	}
+
+	/** Number of cached entries (including expired ones) */
+	public int size() {
+	    synchronized (entries) {
+		return entries.size();
+	    }
+	}
+
+	/**
+	 * Discard all cached return-values, e.g. after the underlying table was
+	 * updated.
+	 */
+	public void invalidate() {
+	    synchronized (entries) {
+		entries.clear();
+		generation++;
+	    }
+	}
+
+	private Object call(Connection conn, StatementCache cache,
+		Map<String, Object> paramValues, int returnType) {
+	    ResultKey key = new ResultKey(paramValues, returnType);
+	    long gen;
+	    long now = System.nanoTime();
+	    synchronized (entries) {
+		CachedResult c = entries.get(key);
+		if (c != null) {
+		    if (c.expire - now > 0) {
+			hitCount.incrementAndGet();
+			return (c.value == NULL_RESULT) ? null
+				: copyOf(c.value);
+		    }
+		    entries.remove(key);
+		}
+		gen = generation;
+	    }
+	    missCount.incrementAndGet();
+
+	    Object res = (cache == null) ? callStoredFuncOnlyInParamDirect(
+		    conn, procedureName, paramValues, returnType)
+		    : callStoredFuncOnlyInParamDirect(cache, procedureName,
+			    paramValues, returnType);
+	    synchronized (entries) {
+		if (gen == generation) {
+		    entries.put(key, new CachedResult((res == null)
+			    ? NULL_RESULT : copyOf(res), now + ttlNanos));
+		}
+	    }
+	    return res;
+	}
+
+	/**
+	 * Dates (including java.sql.Timestamp) are mutable, so each caller
+	 * gets its own copy.
+	 */
+	private static Object copyOf(Object v) {
+	    return (v instanceof java.util.Date) ? ((java.util.Date) v)
+		    .clone() : v;
+	}
+    }
+
+    /**
+     * Call a stored function that returns value.
+     * 
+     * @param conn
+     *            JDBC Connection
+     * @param procedureName
+     *            Name of procedure or function (ex. "AAA_PKG.BBB_FUNC")
+     * @param bindParams
+     *            Map contains parameter name (key) and BindParam object (value)
+     * @param returnType
+     *            Type of return value (defined on jdbc.sql.Types)
+     * @return Map contains return-value and OUT Parameter's value. If key of
+     *         Map is RETURN_KEY, value is return-value of function.
+     */
+    static public Map<String, Object> callStoredFunction(Connection conn,
+	    String procedureName, Map<String, BindParam> bindParams,
+	    int returnType) {
+
+	if (conn == null) {
+	    throw new IllegalArgumentException("connection is null.");
+	}
+	if (procedureName == null || procedureName.equals("")) {
+	    throw new IllegalArgumentException(
+		    "procedureName is null or empty.");
+	}
+
+	return callStatement(conn, null, procedureName, bindParams, returnType);
+
+    }
+
+    /**
+     * Call a stored procedure (without return-value)
+     * 
+     * @param conn
+     *            JDBC Connection
+     * @param procedureName
+     *            Name of procedure or function (ex. "AAA_PKG.BBB_FUNC")
+     * @param bindParams
+     *            Map contains parameter name (key) and BindParam object (value)
+     * @return Map contains return-value and OUT Parameter's value.
+     */
+    static public Map<String, Object> callStoredProcedure(Connection conn,
+	    String procedureName, Map<String, BindParam> bindParams) {
+
+	return callStoredFunction(conn, procedureName, bindParams, Types.NULL);
+    }
+
+    /**
+     * Call a stored function that returns value.<br>
+     * This method supports only functions that has no OUT-parameter.
+     * 
+     * @param conn
+     *            JDBC Connection
+     * @param procedureName
+     *            Name of procedure or function (ex. "AAA_PKG.BBB_FUNC")
+     * @param paramValues
+     *            Map contains parameter name (key) and parameter value
+     * @param returnType
+     *            Type of return value (defined on jdbc.sql.Types)
+     * @return Map contains return-value and OUT Parameter's value. If key of
+     *         Map is RETURN_KEY, value is return-value of function.
+     */
+    static public Object callStoredFuncOnlyInParam(Connection conn,
+	    String procedureName, Map<String, Object> paramValues,
+	    int returnType) {
+
+	ResultCache rc = resultCacheOf(procedureName);
+	if (rc != null) {
+	    if (conn == null) {
+		throw new IllegalArgumentException("connection is null.");
+	    }
+	    return rc.call(conn, null, paramValues, returnType);
+	}
+	return callStoredFuncOnlyInParamDirect(conn, procedureName,
+		paramValues, returnType);
+    }
+
+    static private Object callStoredFuncOnlyInParamDirect(Connection conn,
+	    String procedureName, Map<String, Object> paramValues,
+	    int returnType) {
+
+	Map<String, BindParam> bindParams =
+		convertParamMap(conn, procedureName, paramValues);
+	return callStoredFunction(conn, procedureName, bindParams, returnType)
+		.get(RETURN_KEY);
+    }
+
+    /**
+     * Call a stored procedure (without return-value)<br>
+     * This method supports only functions that has no OUT-parameter.
+     * 
+     * @param conn
+     *            JDBC Connection
+     * @param procedureName
+     *            Name of procedure or function (ex. "AAA_PKG.BBB_FUNC")
+     * @param paramValues
+     *            Map contains parameter name (key) and parameter value
+     * @param returnType
+     *            Type of return value (defined on jdbc.sql.Types)
+     * @return Map contains return-value and OUT Parameter's value. If key of
+     *         Map is RETURN_KEY, value is return-value of function.
+     */
+    static public void callStoredProcOnlyInParam(Connection conn,
+	    String procedureName, Map<String, Object> paramValues) {
+
+	Map<String, BindParam> bindParams =
+		convertParamMap(conn, procedureName, paramValues);
+	callStoredProcedure(conn, procedureName, bindParams);
+    }
+
+    /**
+     * Call a stored function that returns value, reusing a statement cached
+     * in {@code cache}.
+     * 
+     * @param cache
+     *            Statement cache of the connection to use
+     * @param procedureName
+     *            Name of procedure or function (ex. "AAA_PKG.BBB_FUNC")
+     * @param bindParams
+     *            Map contains parameter name (key) and BindParam object (value)
+     * @param returnType
+     *            Type of return value (defined on jdbc.sql.Types)
+     * @return Map contains return-value and OUT Parameter's value. If key of
+     *         Map is RETURN_KEY, value is return-value of function.
+     * @see #callStoredFunction(Connection, String, Map, int)
+     */
+    static public Map<String, Object> callStoredFunction(StatementCache cache,
+	    String procedureName, Map<String, BindParam> bindParams,
+	    int returnType) {
+
+	if (cache == null) {
+	    throw new IllegalArgumentException("statement cache is null.");
+	}
+	if (procedureName == null || procedureName.equals("")) {
+	    throw new IllegalArgumentException(
+		    "procedureName is null or empty.");
+	}
+
+	return callStatement(cache.getConnection(), cache, procedureName,
+		bindParams, returnType);
+    }
+
+    /**
+     * Call a stored procedure (without return-value), reusing a statement
+     * cached in {@code cache}.
+     * 
+     * @param cache
+     *            Statement cache of the connection to use
+     * @param procedureName
+     *            Name of procedure or function (ex. "AAA_PKG.BBB_FUNC")
+     * @param bindParams
+     *            Map contains parameter name (key) and BindParam object (value)
+     * @return Map contains return-value and OUT Parameter's value.
+     */
+    static public Map<String, Object> callStoredProcedure(StatementCache cache,
+	    String procedureName, Map<String, BindParam> bindParams) {
+
+	return callStoredFunction(cache, procedureName, bindParams, Types.NULL);
+    }
+
+    /**
+     * Call a stored function that returns value, reusing a statement cached
+     * in {@code cache}.<br>
+     * This method supports only functions that has no OUT-parameter.
+     * 
+     * @param cache
+     *            Statement cache of the connection to use
+     * @param procedureName
+     *            Name of procedure or function (ex. "AAA_PKG.BBB_FUNC")
+     * @param paramValues
+     *            Map contains parameter name (key) and parameter value
+     * @param returnType
+     *            Type of return value (defined on jdbc.sql.Types)
+     * @return return-value of function.
+     */
+    static public Object callStoredFuncOnlyInParam(StatementCache cache,
+	    String procedureName, Map<String, Object> paramValues,
+	    int returnType) {
+
+	ResultCache rc = resultCacheOf(procedureName);
+	if (rc != null) {
+	    if (cache == null) {
+		throw new IllegalArgumentException("statement cache is null.");
+	    }
+	    return rc.call(null, cache, paramValues, returnType);
+	}
+	return callStoredFuncOnlyInParamDirect(cache, procedureName,
+		paramValues, returnType);
+    }
+
+    static private Object callStoredFuncOnlyInParamDirect(
+	    StatementCache cache, String procedureName,
+	    Map<String, Object> paramValues, int returnType) {
+
+	Map<String, BindParam> bindParams = convertParamMap(
+		(cache == null) ? null : cache.getConnection(), procedureName,
+		paramValues);
+	return callStoredFunction(cache, procedureName, bindParams, returnType)
+		.get(RETURN_KEY);
+    }
+
+    /**
+     * Call a stored procedure (without return-value), reusing a statement
+     * cached in {@code cache}.<br>
+     * This method supports only functions that has no OUT-parameter.
+     * 
+     * @param cache
+     *            Statement cache of the connection to use
+     * @param procedureName
+     *            Name of procedure or function (ex. "AAA_PKG.BBB_FUNC")
+     * @param paramValues
+     *            Map contains parameter name (key) and parameter value
+     */
+    static public void callStoredProcOnlyInParam(StatementCache cache,
+	    String procedureName, Map<String, Object> paramValues) {
+
+	Map<String, BindParam> bindParams = convertParamMap(
+		(cache == null) ? null : cache.getConnection(), procedureName,
+		paramValues);
+	callStoredProcedure(cache, procedureName, bindParams);
+    }
+
+    /**
+     * Call a stored procedure (without return-value) once for each element of
+     * {@code rows}, sending the calls to the database in JDBC batches.<br>
+     * This method supports only procedures that has no OUT-parameter. The
+     * parameter names are taken from the first row, and all rows must have
+     * the same names. Boolean values cannot be batched (they are written as
+     * literals on Oracle).<br>
+     * When a batch fails, or a row has different names or a Boolean value,
+     * it is recorded in the result and the remaining rows are still
+     * executed.
+     * 
+     * @param conn
+     *            JDBC Connection
+     * @param procedureName
+     *            Name of procedure (ex. "AAA_PKG.BBB_PROC")
+     * @param rows
+     *            Maps contain parameter name (key) and parameter value. A
+     *            Stream can be passed as {@code stream::iterator}.
+     * @param batchSize
+     *            Number of rows sent in one executeBatch
+     * @return Update counts and failures per batch
+     */
+    static public BatchResult callStoredProcBatch(Connection conn,
+	    String procedureName,
+	    Iterable<? extends Map<String, Object>> rows, int batchSize) {
+
+	if (conn == null) {
+	    throw new IllegalArgumentException("connection is null.");
+	}
+	if (procedureName == null || procedureName.equals("")) {
+	    throw new IllegalArgumentException(
+		    "procedureName is null or empty.");
+	}
+	if (rows == null) {
+	    throw new IllegalArgumentException("rows is null.");
+	}
+	if (batchSize <= 0) {
+	    throw new IllegalArgumentException("bad batch size: " + batchSize);
+	}
+
+	final List<int[]> updateCounts = new ArrayList<int[]>();
+	final Map<Integer, SQLException> failures =
+		new LinkedHashMap<Integer, SQLException>();
+	final Map<Integer, IllegalArgumentException> rejectedRows =
+		new LinkedHashMap<Integer, IllegalArgumentException>();
+	String[] names = null;
+	Set<Map.Entry<String, BindParam>> shape = null;
+	int rowCount = 0;
+	int pending = 0;
+	CallableStatement stmt = null;
+	// each executeBatch is reported as one call
+	CallTimer timer = CallTimer.start();
+	try {
+	    for (final Map<String, Object> row : rows) {
+		if (names == null) {
+		    names = row.keySet().toArray(new String[row.size()]);
+		    Map<String, BindParam> params =
+			    new LinkedHashMap<String, BindParam>();
+		    for (final String name : names) {
+			params.put(name, new BindParam(InOut.IN, Types.OTHER,
+				null));
+		    }
+		    shape = params.entrySet();
+		    stmt = conn.prepareCall(makeStmtText(procedureName,
+			    shape, false));
+		}
+		IllegalArgumentException rejected = checkBatchRow(row, names,
+			rowCount);
+		if (rejected != null) {
+		    rejectedRows.put(rowCount++, rejected);
+		    continue;
+		}
+
+		for (int i = 0; i < names.length; i++) {
+		    Object v = row.get(names[i]);
+		    stmt.setObject(i + 1, (v != null) ? v : "");
+		}
+		stmt.addBatch();
+		rowCount++;
+		if (++pending == batchSize) {
+		    executeBatch(stmt, pending, updateCounts, failures, timer,
+			    procedureName, shape);
+		    timer = CallTimer.start();
+		    pending = 0;
+		}
+	    }
+	    if (pending > 0) {
+		executeBatch(stmt, pending, updateCounts, failures, timer,
+			procedureName, shape);
+	    }
+	    return new BatchResult(rowCount, updateCounts, failures,
+		    rejectedRows);
+	} catch (SQLException e) {
+	    throw new RuntimeException(e);
+	} finally {
+	    if (stmt != null) {
+		closeQuietly(stmt);
+	    }
+	}
+    }
+
+    /**
+     * Call a stored procedure/function that returns a cursor as an OUT
+     * parameter, and open the cursor for streaming.<br>
+     * The rows are not read into memory; they are fetched from the database
+     * {@code fetchSize} rows at a time while iterating the returned
+     * CursorRows.
+     * 
+     * <pre>
+     * {@code
+     * params.put("P_ROWS", new BindParam(InOut.OUT, StoredProcUtils.ORACLE_CURSOR, null));
+     * try (CursorRows rows = StoredProcUtils.openCursor(conn, "AAA_PKG.LIST_PROC",
+     *         params, Types.NULL, "P_ROWS", 1000)) {
+     *     while (rows.hasNext()) {
+     *         Map<String, Object> row = rows.next();
+     *         ...
+     *     }
+     * }
+     * }
+     * </pre>
+     * 
+     * @param conn
+     *            JDBC Connection
+     * @param procedureName
+     *            Name of procedure or function (ex. "AAA_PKG.BBB_FUNC")
+     * @param bindParams
+     *            Map contains parameter name (key) and BindParam object
+     *            (value). Must contain the cursor parameter.
+     * @param returnType
+     *            Type of return value (defined on jdbc.sql.Types), or
+     *            Types.NULL for procedures
+     * @param cursorParamName
+     *            Name of the cursor OUT parameter
+     * @param fetchSize
+     *            Number of rows fetched from the database at a time
+     * @return Rows of the cursor (no rows if the procedure returned a NULL
+     *         cursor). Must be closed.
+     */
+    static public CursorRows openCursor(Connection conn, String procedureName,
+	    Map<String, BindParam> bindParams, int returnType,
+	    String cursorParamName, int fetchSize) {
+
+	if (conn == null) {
+	    throw new IllegalArgumentException("connection is null.");
+	}
+	if (procedureName == null || procedureName.equals("")) {
+	    throw new IllegalArgumentException(
+		    "procedureName is null or empty.");
+	}
+	if (bindParams == null || bindParams.get(cursorParamName) == null
+		|| bindParams.get(cursorParamName).getIo().equals(InOut.IN)) {
+	    throw new IllegalArgumentException("no cursor OUT parameter: "
+		    + cursorParamName);
+	}
+	if (fetchSize <= 0) {
+	    throw new IllegalArgumentException("bad fetch size: " + fetchSize);
+	}
+
+	final Set<Map.Entry<String, BindParam>> bpSet = bindParams.entrySet();
+	final boolean isFunction = (returnType != Types.NULL);
+	final CallTimer timer = CallTimer.start();
+	CallableStatement stmt = null;
+	boolean success = false;
+	try {
+	    stmt = conn.prepareCall(makeStmtText(procedureName, bpSet,
+		    isFunction));
+	    putBindParams(bpSet, stmt, isFunction, returnType);
+	    stmt.setFetchSize(fetchSize);
+	    if (timer != null) {
+		timer.prepared();
+	    }
+	    stmt.execute();
+	    if (timer != null) {
+		timer.executed();
+	    }
+
+	    ResultSet rs = (ResultSet) stmt.getObject(paramIndexOf(bpSet,
+		    isFunction, cursorParamName));
+	    if (rs != null) {
+		// null when the procedure left the cursor unopened
+		rs.setFetchSize(fetchSize);
+	    }
+	    CursorRows rows = new CursorRows(stmt, rs, extractOutParamValue(
+		    bpSet, stmt, isFunction, cursorParamName));
+	    stmt = null;
+	    success = true;
+	    return rows;
+	} catch (SQLException e) {
+	    throw new RuntimeException(e);
+	} finally {
+	    if (timer != null) {
+		// rows fetched later while iterating are not included
+		timer.finish(procedureName, bpSet, success);
+	    }
+	    if (stmt != null) {
+		closeQuietly(stmt);
+	    }
+	}
+    }
+
+    /**
+     * Call a stored procedure/function that returns a cursor as an OUT
+     * parameter, and pass each row of the cursor to {@code handler}.<br>
+     * The rows are fetched from the database {@code fetchSize} rows at a
+     * time, so any number of rows can be processed with constant memory.
+     * 
+     * @param conn
+     *            JDBC Connection
+     * @param procedureName
+     *            Name of procedure or function (ex. "AAA_PKG.BBB_FUNC")
+     * @param bindParams
+     *            Map contains parameter name (key) and BindParam object
+     *            (value). Must contain the cursor parameter.
+     * @param returnType
+     *            Type of return value (defined on jdbc.sql.Types), or
+     *            Types.NULL for procedures
+     * @param cursorParamName
+     *            Name of the cursor OUT parameter
+     * @param fetchSize
+     *            Number of rows fetched from the database at a time
+     * @param handler
+     *            Receives each row
+     * @return Map contains return-value and the other OUT Parameter's value.
+     */
+    static public Map<String, Object> forEachCursorRow(Connection conn,
+	    String procedureName, Map<String, BindParam> bindParams,
+	    int returnType, String cursorParamName, int fetchSize,
+	    RowHandler handler) {
+
+	if (handler == null) {
+	    throw new IllegalArgumentException("handler is null.");
+	}
+	CursorRows rows = openCursor(conn, procedureName, bindParams,
+		returnType, cursorParamName, fetchSize);
+	try {
+	    ResultSet rs = rows.getResultSet();
+	    while (rs != null && rs.next()) {
+		handler.handle(rs);
+	    }
+	    return rows.getOutValues();
+	} catch (SQLException e) {
+	    throw new RuntimeException(e);
+	} finally {
+	    rows.close();
+	}
+    }
+
+    /**
+     * Set the hook that receives the timing of each call. Pass null to stop
+     * timing.
+     * 
+     * @param m
+     *            metrics hook
+     * @see StoredProcStats#install()
+     */
+    static public void setMetrics(StoredProcMetrics m) {
+	metrics = m;
+    }
+
+    /**
+     * Log calls that take longer than {@code millis} at WARNING, with the
+     * time of each stage and the shape of the parameters (names, types and
+     * IN/OUT, not values).
+     * 
+     * @param millis
+     *            threshold in milliseconds. 0 to disable.
+     */
+    static public void setSlowCallThresholdMillis(long millis) {
+	if (millis < 0) {
+	    throw new IllegalArgumentException("bad threshold: " + millis);
 	}
+	slowCallThresholdNanos = TimeUnit.MILLISECONDS.toNanos(millis);
     }
 
     /**
-     * Call a stored function that returns value.
+     * Register a read-only function as cacheable. From then on,
+     * callStoredFuncOnlyInParam returns the cached return-value for the same
+     * parameter values until it expires or is invalidated.<br>
+     * Only register functions whose result depends on nothing but their
+     * parameters (code tables, rates, ...), and use parameter values with
+     * value-based equals (String, Number, Date, ...). Registering a function
+     * again replaces its cache.
      * 
-     * @param conn
-     *            JDBC Connection
      * @param procedureName
-     *            Name of procedure or function (ex. "AAA_PKG.BBB_FUNC")
-     * @param bindParams
-     *            Map contains parameter name (key) and BindParam object (value)
-     * @param returnType
-     *            Type of return value (defined on jdbc.sql.Types)
-     * @return Map contains return-value and OUT Parameter's value. If key of
-     *         Map is RETURN_KEY, value is return-value of function.
+     *            Name of function (ex. "AAA_PKG.BBB_FUNC")
+     * @param maxSize
+     *            Maximum number of cached return-values
+     * @param ttlMillis
+     *            Time a return-value is kept, in milliseconds
+     * @return the cache of the function
      */
-    static public Map<String, Object> callStoredFunction(Connection conn,
-	    String procedureName, Map<String, BindParam> bindParams,
-	    int returnType) {
-
-	if (conn == null) {
-	    throw new IllegalArgumentException("connection is null.");
-	}
+    static public ResultCache registerCacheableFunction(String procedureName,
+	    int maxSize, long ttlMillis) {
 	if (procedureName == null || procedureName.equals("")) {
 	    throw new IllegalArgumentException(
 		    "procedureName is null or empty.");
 	}
-
-	return callStatement(conn, procedureName, bindParams, returnType);
-
+	if (maxSize <= 0) {
+	    throw new IllegalArgumentException("bad cache size: " + maxSize);
+	}
+	if (ttlMillis <= 0) {
+	    throw new IllegalArgumentException("bad ttl: " + ttlMillis);
+	}
+	ResultCache rc = new ResultCache(procedureName, maxSize, ttlMillis);
+	resultCaches.put(procedureName.toUpperCase(Locale.ROOT), rc);
+	return rc;
     }
 
     /**
-     * Call a stored procedure (without return-value)
+     * Stop caching a function, and discard its cached return-values.
      * 
-     * @param conn
-     *            JDBC Connection
      * @param procedureName
-     *            Name of procedure or function (ex. "AAA_PKG.BBB_FUNC")
-     * @param bindParams
-     *            Map contains parameter name (key) and BindParam object (value)
-     * @return Map contains return-value and OUT Parameter's value.
+     *            Name of function (ex. "AAA_PKG.BBB_FUNC")
      */
-    static public Map<String, Object> callStoredProcedure(Connection conn,
-	    String procedureName, Map<String, BindParam> bindParams) {
+    static public void unregisterCacheableFunction(String procedureName) {
+	if (procedureName != null) {
+	    resultCaches.remove(procedureName.toUpperCase(Locale.ROOT));
+	}
+    }
 
-	return callStoredFunction(conn, procedureName, bindParams, Types.NULL);
+    /**
+     * @param procedureName
+     *            Name of function (ex. "AAA_PKG.BBB_FUNC")
+     * @return the cache of the function, or null if it is not registered
+     */
+    static public ResultCache getResultCache(String procedureName) {
+	return resultCacheOf(procedureName);
     }
 
     /**
-     * Call a stored function that returns value.<br>
-     * This method supports only functions that has no OUT-parameter.
+     * Discard the cached return-values of a function.
      * 
-     * @param conn
-     *            JDBC Connection
      * @param procedureName
-     *            Name of procedure or function (ex. "AAA_PKG.BBB_FUNC")
-     * @param paramValues
-     *            Map contains parameter name (key) and parameter value
-     * @param returnType
-     *            Type of return value (defined on jdbc.sql.Types)
-     * @return Map contains return-value and OUT Parameter's value. If key of
-     *         Map is RETURN_KEY, value is return-value of function.
+     *            Name of function (ex. "AAA_PKG.BBB_FUNC")
      */
-    static public Object callStoredFuncOnlyInParam(Connection conn,
-	    String procedureName, Map<String, Object> paramValues,
-	    int returnType) {
+    static public void invalidateResultCache(String procedureName) {
+	ResultCache rc = resultCacheOf(procedureName);
+	if (rc != null) {
+	    rc.invalidate();
+	}
+    }
 
-	Map<String, BindParam> bindParams = convertParamMap(paramValues);
-	return callStoredFunction(conn, procedureName, bindParams, returnType)
-		.get(RETURN_KEY);
+    /**
+     * Discard the cached return-values of all registered functions.
+     */
+    static public void invalidateAllResultCaches() {
+	for (ResultCache rc : resultCaches.values()) {
+	    rc.invalidate();
+	}
     }
 
     /**
-     * Call a stored procedure (without return-value)<br>
-     * This method supports only functions that has no OUT-parameter.
+     * Enable or disable metadata-driven parameter types.<br>
+     * When enabled, the methods that take plain parameter values
+     * (callStoredFuncOnlyInParam, callStoredProcOnlyInParam) read the
+     * signature of each procedure once via
+     * {@link DatabaseMetaData#getProcedureColumns}, and bind parameters in
+     * ordinal order with the declared types (null values are bound as typed
+     * NULL). Procedures whose signature cannot be resolved (not found,
+     * overloaded, or the metadata query failed) are bound as before, and
+     * are not looked up again until
+     * {@link #invalidateProcedureMetadata(String)} is called. Parameter
+     * names that differ only in case are rejected with
+     * IllegalArgumentException, since they name the same parameter.
+     * 
+     * @param use
+     *            true to enable
+     */
+    static public void setUseProcedureMetadata(boolean use) {
+	useProcedureMetadata = use;
+    }
+
+    /**
+     * Discard the cached signature of a procedure, e.g. after it was
+     * recompiled with different parameters.
      * 
-     * @param conn
-     *            JDBC Connection
      * @param procedureName
      *            Name of procedure or function (ex. "AAA_PKG.BBB_FUNC")
-     * @param paramValues
-     *            Map contains parameter name (key) and parameter value
-     * @param returnType
-     *            Type of return value (defined on jdbc.sql.Types)
-     * @return Map contains return-value and OUT Parameter's value. If key of
-     *         Map is RETURN_KEY, value is return-value of function.
      */
-    static public void callStoredProcOnlyInParam(Connection conn,
-	    String procedureName, Map<String, Object> paramValues) {
+    static public void invalidateProcedureMetadata(String procedureName) {
+	if (procedureName != null) {
+	    signatureCache.remove(procedureName.toUpperCase(Locale.ROOT));
+	}
+    }
 
-	Map<String, BindParam> bindParams = convertParamMap(paramValues);
-	callStoredProcedure(conn, procedureName, bindParams);
+    /**
+     * Discard all cached procedure signatures.
+     */
+    static public void invalidateAllProcedureMetadata() {
+	signatureCache.clear();
     }
 
     // private methods -----------------------------------------
 
+    static private ResultCache resultCacheOf(String procedureName) {
+	if (procedureName == null || resultCaches.isEmpty()) {
+	    return null;
+	}
+	return resultCaches.get(procedureName.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * @return the reason why the row cannot be batched, or null
+     */
+    static private IllegalArgumentException checkBatchRow(
+	    Map<String, Object> row, String[] names, int rowIndex) {
+	if (row.size() != names.length
+		|| !row.keySet().containsAll(Arrays.asList(names))) {
+	    return new IllegalArgumentException("row " + rowIndex
+		    + " has different parameters: " + row.keySet());
+	}
+	for (final String name : names) {
+	    if (row.get(name) instanceof Boolean) {
+		return new IllegalArgumentException("row " + rowIndex
+			+ ": boolean parameter cannot be batched: " + name);
+	    }
+	}
+	return null;
+    }
+
+    static private void executeBatch(CallableStatement stmt, int rows,
+	    List<int[]> updateCounts, Map<Integer, SQLException> failures,
+	    CallTimer timer, String procedureName,
+	    Set<Map.Entry<String, BindParam>> shape) throws SQLException {
+	if (timer != null) {
+	    timer.prepared();
+	}
+	boolean success = false;
+	try {
+	    updateCounts.add(stmt.executeBatch());
+	    success = true;
+	} catch (BatchUpdateException e) {
+	    int[] counts = e.getUpdateCounts();
+	    failures.put(updateCounts.size(), e);
+	    updateCounts.add((counts != null) ? counts : new int[0]);
+	    stmt.clearBatch();
+	} catch (SQLException e) {
+	    // e.g. connection reset: no counts, so none of the rows is known
+	    // to have been executed
+	    int[] counts = new int[rows];
+	    Arrays.fill(counts, Statement.EXECUTE_FAILED);
+	    failures.put(updateCounts.size(), e);
+	    updateCounts.add(counts);
+	    stmt.clearBatch();
+	} finally {
+	    if (timer != null) {
+		timer.executed();
+		timer.finish(procedureName, shape, success);
+	    }
+	}
+    }
+
     static private Map<String, Object> callStatement(Connection conn,
-	    String procedureName, Map<String, BindParam> bindParams,
-	    int returnType) {
+	    StatementCache cache, String procedureName,
+	    Map<String, BindParam> bindParams, int returnType) {
 
 	final Set<Map.Entry<String, BindParam>> bpSet =
 		(bindParams == null) ? new HashSet<Map.Entry<String, BindParam>>()
 				    : bindParams.entrySet();
+	final boolean isFunction = (returnType != Types.NULL);
+	final CallTimer timer = CallTimer.start();
+	final String stmtStr = makeStmtText(procedureName, bpSet, isFunction);
 	CallableStatement stmt = null;
+	boolean success = false;
 	try {
-	    stmt = buildStmt(procedureName, bpSet, returnType, conn);
+	    stmt = (cache == null) ? conn.prepareCall(stmtStr)
+				   : cache.prepareCall(stmtStr);
+	    putBindParams(bpSet, stmt, isFunction, returnType);
+	    if (timer != null) {
+		timer.prepared();
+	    }
 	    stmt.execute();
-	    return extractOutParamValue(bpSet, stmt, (returnType != Types.NULL));
+	    if (timer != null) {
+		timer.executed();
+	    }
+	    Map<String, Object> res =
+		    extractOutParamValue(bpSet, stmt, isFunction, null);
+	    success = true;
+	    return res;
 	} catch (SQLException e) {
+	    if (cache != null) {
+		// the statement may be unusable after an error
+		cache.invalidate(stmtStr);
+	    }
 	    throw new RuntimeException(e);
 	} finally {
-	    if (stmt != null) {
-		try {
-		    stmt.close();
-		} catch (SQLException e) {
-		    logger.warning("SQLException when close statement:"
-			    + e.getMessage());
-		}
+	    if (stmt != null && cache == null) {
+		closeQuietly(stmt);
+	    }
+	    if (timer != null) {
+		timer.finish(procedureName, bpSet, success);
 	    }
 	}
     }
 
-    static private CallableStatement buildStmt(String procedureName,
-	    Set<Map.Entry<String, BindParam>> bpSet, int returnType,
-	    Connection conn) throws SQLException {
+    static private String makeStmtText(String procedureName,
+	    Set<Map.Entry<String, BindParam>> bpSet, boolean isFunction) {
 
-	final boolean isFunction = (returnType != Types.NULL);
-	String stmtStr =
-		"begin " + (isFunction ? "? := " : "") + procedureName + "("
-			+ makeParamList(bpSet) + "); " + "end;";
+	final StmtKey key = new StmtKey(procedureName, bpSet, isFunction);
+	String stmtStr = stmtTextCache.get(key);
+	if (stmtStr == null) {
+	    stmtStr =
+		    "begin " + (isFunction ? "? := " : "") + procedureName + "("
+			    + makeParamList(bpSet) + "); " + "end;";
+	    if (logger.isLoggable(Level.FINE)) {
+		logger.fine("make statement --> " + stmtStr);
+	    }
+	    if (stmtTextCache.size() < MAX_STMT_TEXT_CACHE_SIZE) {
+		stmtTextCache.putIfAbsent(key, stmtStr);
+	    }
+	}
+	return stmtStr;
+    }
 
-	logger.info("make statement --> " + stmtStr);
-	CallableStatement stmt = conn.prepareCall(stmtStr);
-	putBindParams(bpSet, stmt, isFunction, returnType);
-	return stmt;
+    static private void closeQuietly(CallableStatement stmt) {
+	try {
+	    stmt.close();
+	} catch (SQLException e) {
+	    logger.warning("SQLException when close statement:"
+		    + e.getMessage());
+	}
     }
 
     static private String makeParamList(Set<Map.Entry<String, BindParam>> bpSet) {
@@ -222,7 +1278,13 @@ public class StoredProcUtils {
 	for (final Map.Entry<String, BindParam> elem : bpSet) {
 	    final BindParam bp = elem.getValue();
 	    if (bp.getType() != Types.BOOLEAN) {
-		if (bp.getIo().equals(InOut.IN)
+		if (bp instanceof DeclaredBindParam) {
+		    if (bp.getValue() == null) {
+			stmt.setNull(index, bp.getType());
+		    } else {
+			stmt.setObject(index, bp.getValue(), bp.getType());
+		    }
+		} else if (bp.getIo().equals(InOut.IN)
 			|| bp.getIo().equals(InOut.INOUT)) {
 		    stmt.setObject(index, bp.getValue());
 		}
@@ -237,7 +1299,7 @@ public class StoredProcUtils {
 
     static private Map<String, Object> extractOutParamValue(
 	    Set<Map.Entry<String, BindParam>> bpSet, CallableStatement stmt,
-	    boolean isFunction) throws SQLException {
+	    boolean isFunction, String skipName) throws SQLException {
 
 	int index;
 	Map<String, Object> res = new HashMap<String, Object>();
@@ -248,18 +1310,164 @@ public class StoredProcUtils {
 	    index = 1;
 	}
 
+	// indexes are assigned in the same way as putBindParams
 	for (final Map.Entry<String, BindParam> elem : bpSet) {
 	    String k = elem.getKey();
 	    BindParam v = elem.getValue();
-	    if (!v.getIo().equals(InOut.IN)) {
-		Object newV = stmt.getObject(index);
-		res.put(k, newV);
+	    if (v.getType() != Types.BOOLEAN) {
+		if (!v.getIo().equals(InOut.IN) && !k.equals(skipName)) {
+		    Object newV = stmt.getObject(index);
+		    res.put(k, newV);
+		}
 		index++;
 	    }
 	}
 	return res;
     }
 
+    static private int paramIndexOf(Set<Map.Entry<String, BindParam>> bpSet,
+	    boolean isFunction, String name) {
+
+	int index = isFunction ? 2 : 1;
+	for (final Map.Entry<String, BindParam> elem : bpSet) {
+	    if (elem.getValue().getType() != Types.BOOLEAN) {
+		if (elem.getKey().equals(name)) {
+		    return index;
+		}
+		index++;
+	    }
+	}
+	throw new IllegalArgumentException("no such parameter: " + name);
+    }
+
+    static private Map<String, BindParam> convertParamMap(Connection conn,
+	    String procedureName, Map<String, Object> paramValues) {
+
+	if (!useProcedureMetadata || conn == null || procedureName == null
+		|| paramValues == null) {
+	    return convertParamMap(paramValues);
+	}
+	ProcSignature sig = getSignature(conn, procedureName);
+	if (sig == null || !sig.covers(paramValues.keySet())) {
+	    return convertParamMap(paramValues);
+	}
+
+	// bind in ordinal order, so the statement string is stable
+	TreeMap<Integer, String> ordered = new TreeMap<Integer, String>();
+	for (final String k : paramValues.keySet()) {
+	    String other = ordered.put(sig.ordinalOf(k), k);
+	    if (other != null) {
+		throw new IllegalArgumentException(
+			"parameter names differ only in case: " + other
+				+ ", " + k);
+	    }
+	}
+	Map<String, BindParam> bindParams =
+		new LinkedHashMap<String, BindParam>();
+	for (final String k : ordered.values()) {
+	    Object v = paramValues.get(k);
+	    if (v instanceof Boolean) {
+		// written as literal (see makeParamList)
+		bindParams.put(k, new BindParam(InOut.IN, Types.BOOLEAN, v));
+	    } else {
+		bindParams.put(k, new DeclaredBindParam(sig.typeOf(k), v));
+	    }
+	}
+	return bindParams;
+    }
+
+    static private ProcSignature getSignature(Connection conn,
+	    String procedureName) {
+
+	final String key = procedureName.toUpperCase(Locale.ROOT);
+	ProcSignature sig = signatureCache.get(key);
+	if (sig == null) {
+	    try {
+		sig = readSignature(conn.getMetaData(), procedureName);
+	    } catch (SQLException e) {
+		// bind as without metadata, and do not ask again until
+		// invalidated
+		logger.warning("SQLException when read signature of "
+			+ procedureName + ":" + e.getMessage());
+		sig = new ProcSignature();
+	    }
+	    signatureCache.putIfAbsent(key, sig);
+	}
+	return sig.isResolved() ? sig : null;
+    }
+
+    static private ProcSignature readSignature(DatabaseMetaData meta,
+	    String procedureName) throws SQLException {
+
+	String name = meta.storesUpperCaseIdentifiers() ? procedureName
+		.toUpperCase(Locale.ROOT) : procedureName;
+	String[] parts = name.split("\\.");
+	ProcSignature sig;
+	switch (parts.length) {
+	case 1:
+	    sig = readSignature(meta, "", null, parts[0]);
+	    break;
+	case 2:
+	    // "PACKAGE.PROC" (Oracle reports packages as catalogs) or
+	    // "SCHEMA.PROC"
+	    sig = readSignature(meta, parts[0], null, parts[1]);
+	    if (sig.isEmpty()) {
+		sig = readSignature(meta, "", parts[0], parts[1]);
+	    }
+	    break;
+	case 3:
+	    sig = readSignature(meta, parts[1], parts[0], parts[2]);
+	    break;
+	default:
+	    sig = new ProcSignature();
+	}
+	if (!sig.isResolved()) {
+	    logger.fine("procedure signature not resolved: " + procedureName);
+	}
+	return sig;
+    }
+
+    static private ProcSignature readSignature(DatabaseMetaData meta,
+	    String catalog, String schema, String procedure)
+	    throws SQLException {
+
+	ProcSignature sig = new ProcSignature();
+	ResultSet rs = meta.getProcedureColumns(catalog, schema,
+		escapePattern(meta, procedure), "%");
+	try {
+	    while (rs.next()) {
+		int columnType = rs.getInt("COLUMN_TYPE");
+		if (columnType == DatabaseMetaData.procedureColumnReturn
+			|| columnType == DatabaseMetaData.procedureColumnResult) {
+		    continue;
+		}
+		sig.add(rs.getString("COLUMN_NAME"),
+			rs.getInt("ORDINAL_POSITION"), rs.getInt("DATA_TYPE"));
+	    }
+	} finally {
+	    rs.close();
+	}
+	return sig;
+    }
+
+    /** escape "_" and "%" so that the name is not used as a pattern */
+    static private String escapePattern(DatabaseMetaData meta, String name)
+	    throws SQLException {
+	String esc = meta.getSearchStringEscape();
+	if (esc == null || esc.isEmpty()) {
+	    return name;
+	}
+	StringBuilder buf = new StringBuilder();
+	for (int i = 0; i < name.length(); i++) {
+	    char c = name.charAt(i);
+	    if (c == '_' || c == '%') {
+		buf.append(esc);
+	    }
+	    buf.append(c);
+	}
+	return buf.toString();
+    }
+
     static private Map<String, BindParam> convertParamMap(
 	    Map<String, Object> paramValues) {
 
@@ -291,6 +1499,272 @@ public class StoredProcUtils {
 	return bindParams;
     }
 
+    /**
+     * An IN parameter whose type was declared by the database. It is bound
+     * with that type, and null is bound as typed NULL.
+     */
+    static private final class DeclaredBindParam extends BindParam {
+	DeclaredBindParam(int type, Object value) {
+	    super(InOut.IN, type, value);
+	}
+    }
+
+    /**
+     * Parameters of a procedure read from DatabaseMetaData: ordinal position
+     * and declared type, keyed by upper-case parameter name.
+     */
+    static private final class ProcSignature {
+	private final Map<String, int[]> columns = new HashMap<String, int[]>();
+	private final Set<Integer> ordinals = new HashSet<Integer>();
+	private boolean overloaded = false;
+
+	void add(String name, int ordinal, int type) {
+	    if (name == null) {
+		return;
+	    }
+	    // same name or position twice: overloaded procedure, cannot
+	    // choose one
+	    if (columns.put(name.toUpperCase(Locale.ROOT), new int[] {
+		    ordinal, type }) != null || !ordinals.add(ordinal)) {
+		overloaded = true;
+	    }
+	}
+
+	boolean isEmpty() {
+	    return columns.isEmpty();
+	}
+
+	boolean isResolved() {
+	    return !columns.isEmpty() && !overloaded;
+	}
+
+	boolean covers(Set<String> names) {
+	    for (final String k : names) {
+		if (!columns.containsKey(k.toUpperCase(Locale.ROOT))) {
+		    return false;
+		}
+	    }
+	    return true;
+	}
+
+	int ordinalOf(String name) {
+	    return columns.get(name.toUpperCase(Locale.ROOT))[0];
+	}
+
+	int typeOf(String name) {
+	    return columns.get(name.toUpperCase(Locale.ROOT))[1];
+	}
+    }
+
+    /**
+     * Cache key of a function call: return type and parameter values, with
+     * upper-case parameter names sorted so that the order of the caller's Map
+     * does not matter.
+     */
+    static private final class ResultKey {
+	private final int returnType;
+	private final TreeMap<String, Object> params =
+		new TreeMap<String, Object>();
+	private final int hash;
+
+	ResultKey(Map<String, Object> paramValues, int returnType) {
+	    this.returnType = returnType;
+	    if (paramValues != null) {
+		for (final Map.Entry<String, Object> elem : paramValues
+			.entrySet()) {
+		    Object v = elem.getValue();
+		    if (v instanceof java.util.Date) {
+			// the caller may modify it after the call
+			v = ((java.util.Date) v).clone();
+		    }
+		    params.put(elem.getKey().toUpperCase(Locale.ROOT), v);
+		}
+	    }
+	    this.hash = 31 * returnType + params.hashCode();
+	}
+
+	@Override
+	public int hashCode() {
+	    return hash;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+	    if (!(o instanceof ResultKey)) {
+		return false;
+	    }
+	    ResultKey k = (ResultKey) o;
+	    return returnType == k.returnType && params.equals(k.params);
+	}
+    }
+
+    /** A cached return-value and its expiry (System.nanoTime() based) */
+    static private final class CachedResult {
+	private final Object value;
+	private final long expire;
+
+	CachedResult(Object value, long expire) {
+	    this.value = value;
+	    this.expire = expire;
+	}
+    }
+
+    /**
+     * Measures the stages of one call, and reports them to the metrics hook
+     * and the slow-call log. start() returns null when neither is enabled,
+     * so that untimed calls do not read the clock.
+     */
+    static final class CallTimer {
+	private final StoredProcMetrics m;
+	private final long slowNanos;
+	private final long start;
+	private long prepared;
+	private long executed;
+	private int stage = 0;
+
+	private CallTimer(StoredProcMetrics m, long slowNanos) {
+	    this.m = m;
+	    this.slowNanos = slowNanos;
+	    this.start = System.nanoTime();
+	}
+
+	static CallTimer start() {
+	    StoredProcMetrics m = metrics;
+	    long slowNanos = slowCallThresholdNanos;
+	    return (m == null && slowNanos == 0L) ? null : new CallTimer(m,
+		    slowNanos);
+	}
+
+	void prepared() {
+	    prepared = System.nanoTime();
+	    stage = 1;
+	}
+
+	void executed() {
+	    executed = System.nanoTime();
+	    stage = 2;
+	}
+
+	void finish(String procedureName,
+		Set<Map.Entry<String, BindParam>> bpSet, boolean success) {
+	    finish(procedureName, bpSet, null, success);
+	}
+
+	/**
+	 * @param shape
+	 *            parameter names, types and IN/OUT, for the slow-call log
+	 */
+	void finish(String procedureName, String shape, boolean success) {
+	    finish(procedureName, null, shape, success);
+	}
+
+	private void finish(String procedureName,
+		Set<Map.Entry<String, BindParam>> bpSet, String shape,
+		boolean success) {
+	    long end = System.nanoTime();
+	    long prepareNanos = ((stage >= 1) ? prepared : end) - start;
+	    long executeNanos = (stage >= 1) ? ((stage >= 2) ? executed : end)
+		    - prepared : 0L;
+	    long extractNanos = (stage >= 2) ? end - executed : 0L;
+
+	    if (m != null) {
+		m.called(procedureName, prepareNanos, executeNanos,
+			extractNanos, success);
+	    }
+	    if (slowNanos > 0L && end - start >= slowNanos) {
+		logger.warning(String.format(
+			"slow call: %s (%s) total=%dms prepare=%dms"
+				+ " execute=%dms extract=%dms%s",
+			procedureName,
+			(shape != null) ? shape : describeShape(bpSet),
+			TimeUnit.NANOSECONDS.toMillis(end - start),
+			TimeUnit.NANOSECONDS.toMillis(prepareNanos),
+			TimeUnit.NANOSECONDS.toMillis(executeNanos),
+			TimeUnit.NANOSECONDS.toMillis(extractNanos),
+			success ? "" : " FAILED"));
+	    }
+	}
+
+	/** parameter names, types and IN/OUT, without values */
+	private static String describeShape(
+		Set<Map.Entry<String, BindParam>> bpSet) {
+	    StringBuilder buf = new StringBuilder();
+	    for (final Map.Entry<String, BindParam> elem : bpSet) {
+		if (buf.length() > 0) {
+		    buf.append(", ");
+		}
+		BindParam v = elem.getValue();
+		buf.append(elem.getKey()).append(' ').append(v.getIo())
+			.append(':').append(v.getType());
+	    }
+	    return buf.toString();
+	}
+    }
+
+    /**
+     * Cache key of a statement string: procedure name and the shape of its
+     * parameters (names in order, and literal values of boolean IN
+     * parameters, which are written into the statement).
+     */
+    static private final class StmtKey {
+	private static final byte BIND = 0;
+	private static final byte LITERAL_NULL = 1;
+	private static final byte LITERAL_TRUE = 2;
+	private static final byte LITERAL_FALSE = 3;
+	private static final byte NONE = 4;
+
+	private final String procedureName;
+	private final boolean isFunction;
+	private final String[] names;
+	private final byte[] shape;
+	private final int hash;
+
+	StmtKey(String procedureName, Set<Map.Entry<String, BindParam>> bpSet,
+		boolean isFunction) {
+	    this.procedureName = procedureName;
+	    this.isFunction = isFunction;
+	    this.names = new String[bpSet.size()];
+	    this.shape = new byte[bpSet.size()];
+	    int i = 0;
+	    for (final Map.Entry<String, BindParam> elem : bpSet) {
+		BindParam v = elem.getValue();
+		names[i] = elem.getKey();
+		if (v.getType() != Types.BOOLEAN) {
+		    shape[i] = BIND;
+		} else if (!v.getIo().equals(InOut.IN)) {
+		    shape[i] = NONE;
+		} else if (v.getValue() == null) {
+		    shape[i] = LITERAL_NULL;
+		} else {
+		    shape[i] = v.getValue().equals(Boolean.TRUE) ? LITERAL_TRUE
+								: LITERAL_FALSE;
+		}
+		i++;
+	    }
+	    int h = procedureName.hashCode();
+	    h = 31 * h + (isFunction ? 1 : 0);
+	    h = 31 * h + Arrays.hashCode(names);
+	    this.hash = 31 * h + Arrays.hashCode(shape);
+	}
+
+	@Override
+	public int hashCode() {
+	    return hash;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+	    if (!(o instanceof StmtKey)) {
+		return false;
+	    }
+	    StmtKey k = (StmtKey) o;
+	    return hash == k.hash && isFunction == k.isFunction
+		    && procedureName.equals(k.procedureName)
+		    && Arrays.equals(names, k.names)
+		    && Arrays.equals(shape, k.shape);
+	}
+    }
+
     private StoredProcUtils() {
     }
 }
@@ -0,0 +1,51 @@
+package smallcodes.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ACWrapper: wrapping a resource and closing it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ACWrapperBenchmark {
+
+    /** A resource with close() but without AutoCloseable */
+    public static class OldResource {
+        private int closeCount;
+
+        public void close() {
+            closeCount++;
+        }
+    }
+
+    private final OldResource resource = new OldResource();
+
+    @Benchmark
+    public AutoCloseable construct() throws Throwable {
+        return (AutoCloseable) Targets.NEW_AC_WRAPPER.invokeExact(
+                (Object) resource);
+    }
+
+    @Benchmark
+    public int constructAndClose() throws Throwable {
+        try (AutoCloseable acw = (AutoCloseable) Targets.NEW_AC_WRAPPER
+                .invokeExact((Object) resource)) {
+            // the resource is used here
+        }
+        return resource.closeCount;
+    }
+}
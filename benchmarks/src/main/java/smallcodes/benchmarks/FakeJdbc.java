@@ -0,0 +1,86 @@
+package smallcodes.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+
+/**
+ * In-process fake of a JDBC Connection and CallableStatement, so that
+ * StoredProcUtils can be measured without a database.<br>
+ * Every method does nothing and returns a default value, except that
+ * prepareCall returns a fake statement and the getters of the statement
+ * return {@link #OUT_VALUE}. The fakes are dynamic proxies, so each JDBC call
+ * costs a reflective dispatch and an argument array; compare the benchmarks
+ * with each other rather than with a real driver.
+ */
+final class FakeJdbc {
+
+    /** Value returned by the getters of fake statements */
+    static final String OUT_VALUE = "OUT-VALUE";
+
+    private static final InvocationHandler STATEMENT_HANDLER =
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method,
+                        Object[] args) {
+                    String name = method.getName();
+                    Class<?> ret = method.getReturnType();
+                    if (name.startsWith("get") && !name.equals("getConnection")
+                            && ret.isAssignableFrom(String.class)) {
+                        return OUT_VALUE;
+                    }
+                    return defaultValue(ret);
+                }
+            };
+
+    private static final InvocationHandler CONNECTION_HANDLER =
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method,
+                        Object[] args) {
+                    if (method.getName().equals("prepareCall")) {
+                        return newStatement();
+                    }
+                    return defaultValue(method.getReturnType());
+                }
+            };
+
+    /**
+     * @return a new fake Connection
+     */
+    static Connection newConnection() {
+        return (Connection) Proxy.newProxyInstance(
+                FakeJdbc.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, CONNECTION_HANDLER);
+    }
+
+    private static CallableStatement newStatement() {
+        return (CallableStatement) Proxy.newProxyInstance(
+                FakeJdbc.class.getClassLoader(),
+                new Class<?>[] { CallableStatement.class }, STATEMENT_HANDLER);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return Boolean.FALSE;
+        } else if (type == int.class) {
+            return Integer.valueOf(0);
+        } else if (type == long.class) {
+            return Long.valueOf(0L);
+        } else if (type == short.class) {
+            return Short.valueOf((short) 0);
+        } else if (type == byte.class) {
+            return Byte.valueOf((byte) 0);
+        } else if (type == double.class) {
+            return Double.valueOf(0.0);
+        } else if (type == float.class) {
+            return Float.valueOf(0.0f);
+        }
+        return null;
+    }
+
+    private FakeJdbc() {
+    }
+}
@@ -0,0 +1,87 @@
+package smallcodes.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups in maps built by MiniUtils.buildMap (HashMap) and
+ * MiniUtils.buildCompactMap (CompactMap). Each invocation looks up
+ * {@value #LOOKUPS} keys in random order; the keys are equal to, but not
+ * the same instances as, the keys in the map.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapLookupBenchmark {
+
+    private static final int LOOKUPS = 1024;
+
+    @Param({ "16", "1024", "100000" })
+    public int size;
+
+    private Map<?, ?> hashMap;
+    private Map<?, ?> compactMap;
+    private String[] probes;
+
+    @Setup
+    public void setUp() throws Throwable {
+        Object[][] data = new Object[size][];
+        for (int i = 0; i < size; i++) {
+            data[i] = new Object[] { "CODE-" + i, Integer.valueOf(i) };
+        }
+        hashMap = (Map<?, ?>) Targets.BUILD_MAP.invokeExact(data,
+                (Class<?>) String.class, (Class<?>) Integer.class);
+        compactMap = (Map<?, ?>) Targets.BUILD_COMPACT_MAP.invokeExact(data,
+                (Class<?>) String.class, (Class<?>) Integer.class);
+
+        Random random = new Random(42);
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < LOOKUPS; i++) {
+            String k = new String("CODE-" + random.nextInt(size));
+            k.hashCode(); // as a key of a real request would have been hashed
+            keys.add(k);
+        }
+        Collections.shuffle(keys, random);
+        probes = keys.toArray(new String[LOOKUPS]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int hashMapGet() {
+        return lookup(hashMap);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int compactMapGet() {
+        return lookup(compactMap);
+    }
+
+    private int lookup(Map<?, ?> map) {
+        int sum = 0;
+        for (String k : probes) {
+            sum += (Integer) map.get(k);
+        }
+        return sum;
+    }
+}
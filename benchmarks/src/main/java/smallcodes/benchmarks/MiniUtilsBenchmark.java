@@ -0,0 +1,56 @@
+package smallcodes.benchmarks;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * MiniUtils: RFC 1123 date formatting and map building.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MiniUtilsBenchmark {
+
+    private final Date fixedDate = new Date(1700000000000L);
+    private Object[][] mapData;
+
+    @Setup
+    public void setUp() {
+        mapData = new Object[16][];
+        for (int i = 0; i < mapData.length; i++) {
+            mapData[i] = new Object[] { "key" + i, "value" + i };
+        }
+    }
+
+    @Benchmark
+    public String formatDateRFC1123Fixed() throws Throwable {
+        return (String) Targets.FORMAT_DATE_RFC1123.invokeExact(fixedDate);
+    }
+
+    /** The usual use: a Date-header of the current time */
+    @Benchmark
+    public String formatDateRFC1123Now() throws Throwable {
+        return (String) Targets.FORMAT_DATE_RFC1123.invokeExact(new Date());
+    }
+
+    @Benchmark
+    public Map<?, ?> buildMap() throws Throwable {
+        return (Map<?, ?>) Targets.BUILD_MAP.invokeExact(mapData,
+                (Class<?>) String.class, (Class<?>) String.class);
+    }
+}
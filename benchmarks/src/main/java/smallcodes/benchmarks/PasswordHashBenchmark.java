@@ -0,0 +1,62 @@
+package smallcodes.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PasswordHashUtil: hashing and verification, string and binary formats.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordHashBenchmark {
+
+    @Param({ "1000", "10000" })
+    public int iterateCount;
+
+    private final String password = "correct horse battery staple";
+    private String hashed;
+    private byte[] hashedBinary;
+
+    @Setup
+    public void setUp() throws Throwable {
+        Targets.SET_ITERATE_COUNT.invokeExact(iterateCount);
+        hashed = (String) Targets.CRYPT.invokeExact(password);
+        hashedBinary = (byte[]) Targets.CRYPT_BINARY.invokeExact(password);
+    }
+
+    @Benchmark
+    public String crypt() throws Throwable {
+        return (String) Targets.CRYPT.invokeExact(password);
+    }
+
+    @Benchmark
+    public boolean passwordMatch() throws Throwable {
+        return (boolean) Targets.PASSWORD_MATCH.invokeExact(password, hashed);
+    }
+
+    @Benchmark
+    public byte[] cryptBinary() throws Throwable {
+        return (byte[]) Targets.CRYPT_BINARY.invokeExact(password);
+    }
+
+    @Benchmark
+    public boolean passwordMatchBinary() throws Throwable {
+        return (boolean) Targets.PASSWORD_MATCH_BINARY.invokeExact(password,
+                hashedBinary);
+    }
+}
@@ -0,0 +1,81 @@
+package smallcodes.benchmarks;
+
+import java.sql.Connection;
+import java.sql.Types;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * StoredProcUtils against {@link FakeJdbc}: statement building, binding and
+ * OUT extraction, without database round trips.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoredProcBenchmark {
+
+    private static final String FUNCTION = "BENCH_PKG.GET_VALUE";
+
+    private Connection conn;
+    private AutoCloseable statementCache;
+    private Map<String, Object> bindParams;
+    private Map<String, Object> paramValues;
+
+    @Setup
+    public void setUp() throws Throwable {
+        conn = FakeJdbc.newConnection();
+        statementCache = (AutoCloseable) Targets.NEW_STATEMENT_CACHE
+                .invokeExact(conn, 16);
+
+        bindParams = new LinkedHashMap<String, Object>();
+        bindParams.put("P_CODE", (Object) Targets.NEW_BIND_PARAM.invokeExact(
+                "IN", Types.VARCHAR, (Object) "A001"));
+        bindParams.put("P_COUNT", (Object) Targets.NEW_BIND_PARAM.invokeExact(
+                "IN", Types.NUMERIC, (Object) Integer.valueOf(10)));
+        bindParams.put("P_NAME", (Object) Targets.NEW_BIND_PARAM.invokeExact(
+                "OUT", Types.VARCHAR, (Object) null));
+
+        paramValues = new LinkedHashMap<String, Object>();
+        paramValues.put("P_CODE", "A001");
+        paramValues.put("P_COUNT", Integer.valueOf(10));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        statementCache.close();
+    }
+
+    @Benchmark
+    public Map<?, ?> callStoredFunction() throws Throwable {
+        return (Map<?, ?>) Targets.CALL_STORED_FUNCTION.invokeExact(conn,
+                FUNCTION, bindParams, Types.VARCHAR);
+    }
+
+    @Benchmark
+    public Map<?, ?> callStoredFunctionCached() throws Throwable {
+        return (Map<?, ?>) Targets.CALL_STORED_FUNCTION_CACHED.invokeExact(
+                (Object) statementCache, FUNCTION, bindParams, Types.VARCHAR);
+    }
+
+    @Benchmark
+    public Object callStoredFuncOnlyInParam() throws Throwable {
+        return (Object) Targets.CALL_STORED_FUNC_ONLY_IN_PARAM.invokeExact(
+                conn, FUNCTION, paramValues, Types.VARCHAR);
+    }
+}
@@ -0,0 +1,121 @@
+package smallcodes.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.sql.Connection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Method handles of the utilities under benchmark.<br>
+ * The utilities are in the default package, which cannot be imported from a
+ * named package, and JMH does not allow benchmarks in the default package.
+ * So the benchmarks call them through these handles. They are static final,
+ * so the JIT treats them as constants and inlines the target as it would a
+ * direct call.
+ */
+final class Targets {
+
+    /** String PasswordHashUtil.crypt(String) */
+    static final MethodHandle CRYPT;
+    /** boolean PasswordHashUtil.passwordMatch(String, String) */
+    static final MethodHandle PASSWORD_MATCH;
+    /** byte[] PasswordHashUtil.cryptBinary(String) */
+    static final MethodHandle CRYPT_BINARY;
+    /** boolean PasswordHashUtil.passwordMatch(String, byte[]) */
+    static final MethodHandle PASSWORD_MATCH_BINARY;
+    /** void PasswordHashUtil.setIterateCount(int) */
+    static final MethodHandle SET_ITERATE_COUNT;
+
+    /** Map StoredProcUtils.callStoredFunction(Connection, String, Map, int) */
+    static final MethodHandle CALL_STORED_FUNCTION;
+    /** Map StoredProcUtils.callStoredFunction(StatementCache, String, Map, int), with the cache as Object */
+    static final MethodHandle CALL_STORED_FUNCTION_CACHED;
+    /** Object StoredProcUtils.callStoredFuncOnlyInParam(Connection, String, Map, int) */
+    static final MethodHandle CALL_STORED_FUNC_ONLY_IN_PARAM;
+    /** new StoredProcUtils.StatementCache(Connection, int), as AutoCloseable */
+    static final MethodHandle NEW_STATEMENT_CACHE;
+    /** new StoredProcUtils.BindParam(InOut, int, Object), as Object; InOut given by name */
+    static final MethodHandle NEW_BIND_PARAM;
+
+    /** new ACWrapper(Object), as AutoCloseable */
+    static final MethodHandle NEW_AC_WRAPPER;
+
+    /** String MiniUtils.formatDateRFC1123(Date) */
+    static final MethodHandle FORMAT_DATE_RFC1123;
+    /** Map MiniUtils.buildMap(Object[][], Class, Class) */
+    static final MethodHandle BUILD_MAP;
+    /** Map MiniUtils.buildCompactMap(Object[][], Class, Class) */
+    static final MethodHandle BUILD_COMPACT_MAP;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> phu = Class.forName("PasswordHashUtil");
+            CRYPT = lookup.findStatic(phu, "crypt",
+                    MethodType.methodType(String.class, String.class));
+            PASSWORD_MATCH = lookup.findStatic(phu, "passwordMatch",
+                    MethodType.methodType(boolean.class, String.class,
+                            String.class));
+            CRYPT_BINARY = lookup.findStatic(phu, "cryptBinary",
+                    MethodType.methodType(byte[].class, String.class));
+            PASSWORD_MATCH_BINARY = lookup.findStatic(phu, "passwordMatch",
+                    MethodType.methodType(boolean.class, String.class,
+                            byte[].class));
+            SET_ITERATE_COUNT = lookup.findStatic(phu, "setIterateCount",
+                    MethodType.methodType(void.class, int.class));
+
+            Class<?> spu = Class.forName("StoredProcUtils");
+            Class<?> cache = Class.forName("StoredProcUtils$StatementCache");
+            Class<?> bindParam = Class.forName("StoredProcUtils$BindParam");
+            Class<?> inOut = Class.forName("StoredProcUtils$InOut");
+            CALL_STORED_FUNCTION = lookup.findStatic(spu,
+                    "callStoredFunction", MethodType.methodType(Map.class,
+                            Connection.class, String.class, Map.class,
+                            int.class));
+            CALL_STORED_FUNCTION_CACHED = lookup.findStatic(spu,
+                    "callStoredFunction", MethodType.methodType(Map.class,
+                            cache, String.class, Map.class, int.class))
+                    .asType(MethodType.methodType(Map.class, Object.class,
+                            String.class, Map.class, int.class));
+            CALL_STORED_FUNC_ONLY_IN_PARAM = lookup.findStatic(spu,
+                    "callStoredFuncOnlyInParam", MethodType.methodType(
+                            Object.class, Connection.class, String.class,
+                            Map.class, int.class));
+            NEW_STATEMENT_CACHE = lookup.findConstructor(cache,
+                    MethodType.methodType(void.class, Connection.class,
+                            int.class)).asType(
+                    MethodType.methodType(AutoCloseable.class,
+                            Connection.class, int.class));
+            MethodHandle inOutValueOf = lookup.findStatic(inOut, "valueOf",
+                    MethodType.methodType(inOut, String.class));
+            NEW_BIND_PARAM = MethodHandles.filterArguments(
+                    lookup.findConstructor(bindParam, MethodType.methodType(
+                            void.class, inOut, int.class, Object.class)), 0,
+                    inOutValueOf).asType(
+                    MethodType.methodType(Object.class, String.class,
+                            int.class, Object.class));
+
+            Class<?> acw = Class.forName("ACWrapper");
+            NEW_AC_WRAPPER = lookup.findConstructor(acw,
+                    MethodType.methodType(void.class, Object.class)).asType(
+                    MethodType.methodType(AutoCloseable.class, Object.class));
+
+            Class<?> mu = Class.forName("MiniUtils");
+            FORMAT_DATE_RFC1123 = lookup.findStatic(mu, "formatDateRFC1123",
+                    MethodType.methodType(String.class, Date.class));
+            BUILD_MAP = lookup.findStatic(mu, "buildMap", MethodType
+                    .methodType(Map.class, Object[][].class, Class.class,
+                            Class.class));
+            BUILD_COMPACT_MAP = lookup.findStatic(mu, "buildCompactMap",
+                    MethodType.methodType(Map.class, Object[][].class,
+                            Class.class, Class.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Targets() {
+    }
+}
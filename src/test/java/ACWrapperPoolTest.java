@@ -0,0 +1,183 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class ACWrapperPoolTest {
+
+    public static class Resource {
+        private final AtomicInteger closed;
+
+        Resource(AtomicInteger closed) {
+            this.closed = closed;
+        }
+
+        public void close() {
+            closed.incrementAndGet();
+        }
+    }
+
+    private static ACWrapperPool<Resource> newPool(
+            final AtomicInteger created, final AtomicInteger closed,
+            int maxSize, long borrowTimeoutMillis) {
+        return newPool(created, closed, maxSize, 60000L, borrowTimeoutMillis);
+    }
+
+    private static ACWrapperPool<Resource> newPool(
+            final AtomicInteger created, final AtomicInteger closed,
+            int maxSize, long maxIdleMillis, long borrowTimeoutMillis) {
+        return new ACWrapperPool<Resource>(
+                new ACWrapperPool.Factory<Resource>() {
+                    @Override
+                    public Resource create() {
+                        created.incrementAndGet();
+                        return new Resource(closed);
+                    }
+
+                    @Override
+                    public boolean validate(Resource r) {
+                        return true;
+                    }
+                }, maxSize, maxIdleMillis, borrowTimeoutMillis);
+    }
+
+    @Test
+    public void reusesReturnedResource() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger closed = new AtomicInteger();
+        ACWrapperPool<Resource> pool = newPool(created, closed, 2, 100L);
+        Resource first;
+        try (ACWrapperPool.Lease<Resource> l = pool.borrow()) {
+            first = l.getResource();
+        }
+        try (ACWrapperPool.Lease<Resource> l = pool.borrow()) {
+            assertTrue(first == l.getResource());
+        }
+        assertEquals(1, created.get());
+        assertEquals(1, pool.getIdleCount());
+
+        pool.close();
+        assertEquals(1, closed.get());
+    }
+
+    @Test
+    public void invalidatedResourceIsDestroyed() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger closed = new AtomicInteger();
+        ACWrapperPool<Resource> pool = newPool(created, closed, 2, 100L);
+        try (ACWrapperPool.Lease<Resource> l = pool.borrow()) {
+            l.invalidate();
+        }
+        assertEquals(1, closed.get());
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(0, pool.getBorrowedCount());
+        pool.close();
+    }
+
+    /** The most recently returned resource is not lent once it is too old */
+    @Test
+    public void expiredResourceIsNotLent() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger closed = new AtomicInteger();
+        ACWrapperPool<Resource> pool = newPool(created, closed, 1, 1L, 100L);
+        Resource first;
+        try (ACWrapperPool.Lease<Resource> l = pool.borrow()) {
+            first = l.getResource();
+        }
+        Thread.sleep(10);
+
+        try (ACWrapperPool.Lease<Resource> l = pool.borrow()) {
+            assertTrue(first != l.getResource());
+        }
+        assertEquals(2, created.get());
+        assertEquals(1, closed.get());
+        pool.close();
+    }
+
+    /** A resource that cannot be lent must not keep its slot */
+    @Test
+    public void resourceWithoutCloseReleasesItsSlot() throws Exception {
+        ACWrapperPool<Object> pool = new ACWrapperPool<Object>(
+                new ACWrapperPool.Factory<Object>() {
+                    @Override
+                    public Object create() {
+                        return new Object();
+                    }
+
+                    @Override
+                    public boolean validate(Object r) {
+                        return true;
+                    }
+                }, 1, 60000L, 50L);
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(IllegalArgumentException.class, () -> pool.borrow());
+        }
+        assertEquals(0, pool.getBorrowedCount());
+        pool.close();
+    }
+
+    @Test
+    public void borrowTimesOutWhenExhausted() throws Exception {
+        ACWrapperPool<Resource> pool = newPool(new AtomicInteger(),
+                new AtomicInteger(), 1, 50L);
+        try (ACWrapperPool.Lease<Resource> l = pool.borrow()) {
+            assertThrows(TimeoutException.class, () -> pool.borrow());
+        }
+        pool.close();
+    }
+
+    @Test
+    public void concurrentBorrowersNeverExceedMaxSize() throws Exception {
+        final AtomicInteger created = new AtomicInteger();
+        final AtomicInteger closed = new AtomicInteger();
+        final ACWrapperPool<Resource> pool = newPool(created, closed, 3,
+                10000L);
+        final AtomicInteger inUse = new AtomicInteger();
+        final AtomicInteger maxInUse = new AtomicInteger();
+        final List<Throwable> errors = new ArrayList<Throwable>();
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            Thread th = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 2000; i++) {
+                        try (ACWrapperPool.Lease<Resource> l = pool.borrow()) {
+                            int n = inUse.incrementAndGet();
+                            maxInUse.accumulateAndGet(n, Math::max);
+                            if (i % 100 == 0) {
+                                Thread.yield();
+                            }
+                            if (i % 500 == 0) {
+                                l.invalidate();
+                            }
+                            inUse.decrementAndGet();
+                        }
+                    }
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            threads.add(th);
+            th.start();
+        }
+        for (Thread th : threads) {
+            th.join();
+        }
+
+        assertTrue(errors.isEmpty(), errors.toString());
+        assertTrue(maxInUse.get() <= 3, "max in use: " + maxInUse.get());
+        assertEquals(0, pool.getBorrowedCount());
+        assertEquals(created.get() - closed.get(), pool.getIdleCount());
+        pool.close();
+        assertEquals(created.get(), closed.get());
+    }
+}
@@ -0,0 +1,31 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class ACWrapperTrackerTest {
+
+    public static class Resource {
+        public void close() {
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ACWrapperTracker.disable();
+        ACWrapperTracker.reset();
+    }
+
+    @Test
+    public void closeIsRecorded() throws Exception {
+        ACWrapperTracker.enable(1.0);
+        long open = ACWrapperTracker.getOpenCount();
+        try (ACWrapper<Resource> w = new ACWrapper<Resource>(new Resource())) {
+            assertEquals(open + 1, ACWrapperTracker.getOpenCount());
+        }
+        assertEquals(open, ACWrapperTracker.getOpenCount());
+        assertEquals(1, ACWrapperTracker.getHoldTimeHistogram(Resource.class)
+                .getCount());
+        assertEquals(0, ACWrapperTracker.getLeakCount());
+    }
+}
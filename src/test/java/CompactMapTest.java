@@ -0,0 +1,143 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class CompactMapTest {
+
+    @Test
+    public void compactMapBehavesLikeHashMap() {
+        CompactMap.Builder<String, Integer> b = CompactMap.builder(
+                String.class, Integer.class, 4);
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+        for (int i = 0; i < 1000; i++) {
+            b.put("k" + i, i);
+            expected.put("k" + i, i);
+        }
+        b.put("k7", -7);
+        expected.put("k7", -7);
+        b.put("none", null);
+        expected.put("none", null);
+
+        CompactMap<String, Integer> map = b.build();
+
+        assertEquals(expected, map);
+        assertEquals(expected.hashCode(), map.hashCode());
+        assertEquals(1001, map.size());
+        assertEquals(Integer.valueOf(-7), map.get("k7"));
+        assertNull(map.get("none"));
+        assertTrue(map.containsKey("none"));
+        assertFalse(map.containsKey("k1000"));
+        assertNull(map.get(1));
+    }
+
+    /** Keys with the same hashCode are told apart by equals() */
+    @Test
+    public void collidingKeys() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        CompactMap<String, String> map = CompactMap
+                .builder(String.class, String.class, 2).put("Aa", "1")
+                .put("BB", "2").build();
+
+        assertEquals("1", map.get("Aa"));
+        assertEquals("2", map.get("BB"));
+    }
+
+    @Test
+    public void compactMapIsImmutable() {
+        CompactMap<String, Integer> map = CompactMap
+                .builder(String.class, Integer.class, 1).put("a", 1).build();
+
+        assertThrows(UnsupportedOperationException.class,
+                () -> map.put("b", 2));
+        assertThrows(UnsupportedOperationException.class,
+                () -> map.remove("a"));
+        assertThrows(UnsupportedOperationException.class,
+                () -> map.entrySet().iterator().remove());
+    }
+
+    @Test
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void builderChecksTypes() {
+        CompactMap.Builder raw = CompactMap.builder(String.class,
+                Integer.class, 1);
+
+        assertThrows(ClassCastException.class,
+                () -> raw.put("a", "not an integer"));
+        assertThrows(ClassCastException.class, () -> raw.put(1, 1));
+        assertThrows(IllegalArgumentException.class, () -> raw.put(null, 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> CompactMap.builder(String.class, Integer.class, -1));
+    }
+
+    @Test
+    public void buildCompactMap() {
+        Map<String, Integer> map = MiniUtils.buildCompactMap(new Object[][] {
+                { "A", 1 }, { "B", 2 } }, String.class, Integer.class);
+
+        assertEquals(2, map.size());
+        assertEquals(Integer.valueOf(2), map.get("B"));
+        assertThrows(ClassCastException.class,
+                () -> MiniUtils.buildCompactMap(new Object[][] { { "A", "1" } },
+                        String.class, Integer.class));
+    }
+
+    @Test
+    public void intCompactMap() {
+        IntCompactMap.Builder<String> b = IntCompactMap.builder(String.class, 0);
+        for (int i = -500; i < 500; i++) {
+            b.put(i * 1024, "v" + i);
+        }
+        b.put(0, null);
+        b.put(Integer.MIN_VALUE, "min");
+
+        IntCompactMap<String> map = b.build();
+
+        assertEquals(1001, map.size());
+        assertEquals("v-500", map.get(-500 * 1024));
+        assertEquals("v499", map.get(499 * 1024));
+        assertEquals("min", map.get(Integer.MIN_VALUE));
+        assertNull(map.get(0));
+        assertTrue(map.containsKey(0));
+        assertFalse(map.containsKey(1));
+        assertEquals("x", map.getOrDefault(1, "x"));
+        assertNull(map.getOrDefault(0, "x"));
+        int[] keys = map.keys();
+        assertEquals(Integer.MIN_VALUE, keys[0]);
+        assertEquals(499 * 1024, keys[keys.length - 1]);
+        assertEquals("{}", IntCompactMap.builder(String.class, 0).build()
+                .toString());
+        assertEquals("{1=a, 2=b}", IntCompactMap.builder(String.class, 2)
+                .put(2, "b").put(1, "a").build().toString());
+    }
+
+    @Test
+    public void longCompactMap() {
+        LongCompactMap.Builder<String> b = LongCompactMap.builder(
+                String.class, 0);
+        for (long i = 0; i < 1000; i++) {
+            // differ only in the upper 32 bits
+            b.put(i << 32, "v" + i);
+        }
+        b.put(1L << 32, "one");
+
+        LongCompactMap<String> map = b.build();
+
+        assertEquals(1000, map.size());
+        assertEquals("v0", map.get(0L));
+        assertEquals("one", map.get(1L << 32));
+        assertEquals("v999", map.get(999L << 32));
+        assertNull(map.get(1L));
+        assertFalse(map.containsKey(1000L << 32));
+        assertArrayEquals(new long[] { 1L, 5L }, LongCompactMap
+                .builder(String.class, 2).put(5L, "a").put(1L, "b").build()
+                .keys());
+    }
+}
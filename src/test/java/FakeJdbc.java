@@ -0,0 +1,212 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JDBC objects backed by dynamic proxies, for testing StoredProcUtils and
+ * friends without a database. Every call on a statement is recorded as
+ * {@code name[args]} in {@link #calls}; a {@link StatementHandler} can
+ * answer or fail individual calls.
+ */
+public class FakeJdbc {
+
+    /** Answers a statement call, or returns {@link FakeJdbc#DEFAULT} */
+    public interface StatementHandler {
+        Object invoke(String sql, String method, Object[] args)
+                throws SQLException;
+    }
+
+    public static final Object DEFAULT = new Object();
+
+    public final List<String> calls = Collections
+            .synchronizedList(new ArrayList<String>());
+    public final List<String> prepared = Collections
+            .synchronizedList(new ArrayList<String>());
+
+    private volatile StatementHandler handler;
+    private volatile DatabaseMetaData metaData;
+
+    public FakeJdbc handler(StatementHandler handler) {
+        this.handler = handler;
+        return this;
+    }
+
+    public FakeJdbc metaData(DatabaseMetaData metaData) {
+        this.metaData = metaData;
+        return this;
+    }
+
+    public Connection connection() {
+        return proxy(Connection.class, (p, m, args) -> {
+            switch (m.getName()) {
+            case "prepareCall":
+                prepared.add((String) args[0]);
+                return statement((String) args[0]);
+            case "getMetaData":
+                return metaData;
+            default:
+                return defaultValue(m);
+            }
+        });
+    }
+
+    /** Number of recorded calls of the method */
+    public int count(String method) {
+        synchronized (calls) {
+            int c = 0;
+            for (String call : calls) {
+                if (call.equals(method) || call.startsWith(method + "[")) {
+                    c++;
+                }
+            }
+            return c;
+        }
+    }
+
+    /** Recorded calls of methods whose names start with the prefixes, in order */
+    public List<String> calls(String... prefixes) {
+        List<String> res = new ArrayList<String>();
+        synchronized (calls) {
+            for (String call : calls) {
+                for (String prefix : prefixes) {
+                    if (call.startsWith(prefix)) {
+                        res.add(call);
+                        break;
+                    }
+                }
+            }
+        }
+        return res;
+    }
+
+    /** A proxy of the interface, e.g. a DatabaseMetaData for one test */
+    @SuppressWarnings("unchecked")
+    public static <T> T proxy(Class<T> type, InvocationHandler h) {
+        return (T) Proxy.newProxyInstance(FakeJdbc.class.getClassLoader(),
+                new Class<?>[] { type }, h);
+    }
+
+    /**
+     * A forward-only ResultSet over the rows. getObject/getString/getInt
+     * accept a column label or a 1-origin index.
+     */
+    public static ResultSet resultSet(final String[] columns,
+            final Object[]... rows) {
+        final int[] pos = { -1 };
+        final boolean[] closed = { false };
+        return proxy(ResultSet.class, (p, m, args) -> {
+            switch (m.getName()) {
+            case "next":
+                return ++pos[0] < rows.length;
+            case "close":
+                closed[0] = true;
+                return null;
+            case "isClosed":
+                return closed[0];
+            case "getMetaData":
+                return proxy(ResultSetMetaData.class, (q, n, a) -> {
+                    switch (n.getName()) {
+                    case "getColumnCount":
+                        return columns.length;
+                    case "getColumnLabel":
+                    case "getColumnName":
+                        return columns[(Integer) a[0] - 1];
+                    default:
+                        return defaultValue(n);
+                    }
+                });
+            case "getObject":
+            case "getString":
+            case "getInt":
+            case "getShort":
+                Object v = rows[pos[0]][column(columns, args[0])];
+                if (m.getReturnType() == int.class
+                        || m.getReturnType() == short.class) {
+                    int n = (v == null) ? 0 : ((Number) v).intValue();
+                    return (m.getReturnType() == int.class) ? (Object) n
+                            : (Object) (short) n;
+                }
+                return (m.getName().equals("getString") && v != null) ? v
+                        .toString() : v;
+            default:
+                return defaultValue(m);
+            }
+        });
+    }
+
+    // private methods -----------------------------------------
+
+    private CallableStatement statement(final String sql) {
+        final int[] batch = { 0 };
+        return proxy(CallableStatement.class, (p, m, args) -> {
+            String name = m.getName();
+            calls.add(name + ((args == null) ? "" : Arrays.toString(args)));
+            StatementHandler h = handler;
+            if (h != null) {
+                Object res = h.invoke(sql, name, args);
+                if (res != DEFAULT) {
+                    if (name.equals("executeBatch")) {
+                        batch[0] = 0;
+                    }
+                    return res;
+                }
+            }
+            switch (name) {
+            case "addBatch":
+                batch[0]++;
+                return null;
+            case "clearBatch":
+                batch[0] = 0;
+                return null;
+            case "executeBatch":
+                int[] counts = new int[batch[0]];
+                Arrays.fill(counts, 1);
+                batch[0] = 0;
+                return counts;
+            default:
+                return defaultValue(m);
+            }
+        });
+    }
+
+    private static int column(String[] columns, Object key) {
+        if (key instanceof Integer) {
+            return (Integer) key - 1;
+        }
+        int i = Arrays.asList(columns).indexOf(key);
+        if (i < 0) {
+            throw new IllegalArgumentException("no column: " + key);
+        }
+        return i;
+    }
+
+    private static Object defaultValue(Method m) {
+        Class<?> type = m.getReturnType();
+        if (type == boolean.class) {
+            return Boolean.FALSE;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        if (type == double.class) {
+            return 0.0;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,99 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.jupiter.api.Test;
+
+public class MiniUtilsTest {
+
+    private static SimpleDateFormat rfc1123() {
+        SimpleDateFormat f = new SimpleDateFormat(
+                "EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        f.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return f;
+    }
+
+    @Test
+    public void formatMatchesSimpleDateFormat() {
+        SimpleDateFormat f = rfc1123();
+        Random r = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            // 1900-01-01 .. 2200-01-01
+            long t = -2208988800000L + (long) (r.nextDouble() * 9467107200000L);
+            assertEquals(f.format(new Date(t)), MiniUtils.formatDateRFC1123(t),
+                    "at " + t);
+        }
+        long now = System.currentTimeMillis();
+        assertEquals(f.format(new Date(now)), MiniUtils.formatDateRFC1123(now));
+        assertEquals(f.format(new Date(now)),
+                MiniUtils.formatDateRFC1123(new Date(now)));
+    }
+
+    @Test
+    public void formatOutsideFastRange() {
+        SimpleDateFormat f = rfc1123();
+        long t = -2208988800001L; // 1899-12-31T23:59:59.999Z
+        assertEquals(f.format(new Date(t)), MiniUtils.formatDateRFC1123(t));
+    }
+
+    @Test
+    public void formatIntoBuffers() {
+        long t = 1700000000000L;
+        String expected = "Tue, 14 Nov 2023 22:13:20 GMT";
+        assertEquals(expected, MiniUtils.formatDateRFC1123(t,
+                new StringBuilder("x")).substring(1));
+        byte[] buf = new byte[MiniUtils.RFC1123_LENGTH + 2];
+        assertEquals(MiniUtils.RFC1123_LENGTH,
+                MiniUtils.formatDateRFC1123(t, buf, 2));
+        assertEquals(expected, new String(buf, 2, MiniUtils.RFC1123_LENGTH,
+                java.nio.charset.StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void parseRoundTrip() {
+        Random r = new Random(2);
+        for (int i = 0; i < 100000; i++) {
+            long t = (long) (r.nextDouble() * 4102444800000L) / 1000 * 1000;
+            assertEquals(t, MiniUtils.parseDateRFC1123(MiniUtils
+                    .formatDateRFC1123(t)), "at " + t);
+        }
+    }
+
+    @Test
+    public void parseObsoleteFormats() {
+        long t = 784111777000L; // Sun, 06 Nov 1994 08:49:37 GMT
+        assertEquals(t, MiniUtils.parseDateRFC1123("Sun, 06 Nov 1994 08:49:37 GMT"));
+        assertEquals(t, MiniUtils.parseDateRFC1123("Sunday, 06-Nov-94 08:49:37 GMT"));
+        assertEquals(t, MiniUtils.parseDateRFC1123("Sun Nov  6 08:49:37 1994"));
+        assertEquals(t, MiniUtils.parseDateRFC1123("Sun, 06 Nov 1994 09:49:37 +0100"));
+    }
+
+    /** Years before the fast range are parsed by java.time */
+    @Test
+    public void parseEarlyYears() {
+        for (String date : new String[] { "0000-01-01", "0000-02-29",
+                "0001-02-28", "1600-01-31", "1899-12-31" }) {
+            ZonedDateTime t = LocalDate.parse(date).atStartOfDay(ZoneOffset.UTC);
+            assertEquals(t.toInstant().toEpochMilli(), MiniUtils
+                    .parseDateRFC1123(DateTimeFormatter.RFC_1123_DATE_TIME
+                            .format(t)), date);
+        }
+    }
+
+    @Test
+    public void parseInvalid() {
+        assertEquals(-1L, MiniUtils.parseDateRFC1123(null));
+        assertEquals(-1L, MiniUtils.parseDateRFC1123(""));
+        assertEquals(-1L, MiniUtils.parseDateRFC1123("Sun, 32 Nov 1994 08:49:37 GMT"));
+        assertEquals(-1L, MiniUtils.parseDateRFC1123("Sun, 06 Xyz 1994 08:49:37 GMT"));
+        assertEquals(-1L, MiniUtils.parseDateRFC1123("yesterday"));
+    }
+}
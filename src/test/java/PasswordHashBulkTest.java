@@ -0,0 +1,72 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+public class PasswordHashBulkTest {
+
+    @Test
+    public void cryptKeepsInputOrder() throws Exception {
+        List<String> srcs = IntStream.range(0, 50).mapToObj(i -> "pass" + i)
+                .collect(Collectors.toList());
+
+        PasswordHashBulk.Result<String> res = PasswordHashBulk.crypt(srcs);
+
+        assertEquals(50, res.size());
+        assertEquals(0, res.getFailureCount());
+        for (int i = 0; i < srcs.size(); i++) {
+            assertTrue(PasswordHashUtil.passwordMatch(srcs.get(i), res.get(i)));
+        }
+    }
+
+    @Test
+    public void passwordMatchReportsErrorsPerElement() throws Exception {
+        String hashed = PasswordHashUtil.crypt("secret");
+        List<Map.Entry<String, String>> pairs = new ArrayList<Map.Entry<String, String>>();
+        pairs.add(new SimpleEntry<String, String>("secret", hashed));
+        pairs.add(new SimpleEntry<String, String>("wrong", hashed));
+        pairs.add(new SimpleEntry<String, String>("secret", "broken"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            PasswordHashBulk.Result<Boolean> res = PasswordHashBulk
+                    .passwordMatch(pairs, executor);
+
+            assertEquals(3, res.size());
+            assertEquals(Boolean.TRUE, res.get(0));
+            assertEquals(Boolean.FALSE, res.get(1));
+            assertNull(res.get(2));
+            assertTrue(res.getError(2) instanceof IllegalArgumentException);
+            assertEquals(1, res.getFailureCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /** Iterables that are not Collections are read window by window */
+    @Test
+    public void streamInput() throws Exception {
+        Stream<String> stream = IntStream.range(0, 3000).mapToObj(i -> "p" + i);
+
+        PasswordHashBulk.Result<String> res = PasswordHashBulk
+                .crypt(stream::iterator);
+
+        assertEquals(3000, res.size());
+        assertEquals(0, res.getFailureCount());
+        assertTrue(PasswordHashUtil.passwordMatch("p0", res.get(0)));
+        assertTrue(PasswordHashUtil.passwordMatch("p2999", res.get(2999)));
+        assertFalse(PasswordHashUtil.passwordMatch("p1", res.get(2999)));
+    }
+}
@@ -0,0 +1,147 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class PasswordHashUtilTest {
+
+    @Test
+    public void cryptRoundTrip() {
+        String hashed = PasswordHashUtil.crypt("p@ssw0rd");
+        assertTrue(PasswordHashUtil.passwordMatch("p@ssw0rd", hashed));
+        assertTrue(PasswordHashUtil.passwordMatch("p@ssw0rd".toCharArray(),
+                hashed));
+        assertTrue(PasswordHashUtil.passwordMatch(
+                "p@ssw0rd".getBytes(StandardCharsets.UTF_8), hashed));
+        assertFalse(PasswordHashUtil.passwordMatch("p@ssw0rD", hashed));
+        assertFalse(PasswordHashUtil.passwordMatch("", hashed));
+    }
+
+    @Test
+    public void nonAsciiPassword() {
+        String hashed = PasswordHashUtil.crypt("パスワード".toCharArray());
+        assertTrue(PasswordHashUtil.passwordMatch("パスワード", hashed));
+    }
+
+    @Test
+    public void versionedFormat() {
+        String hashed = PasswordHashUtil.crypt("secret");
+        assertTrue(hashed.startsWith("$sha256$"
+                + PasswordHashUtil.getIterateCount() + "$"), hashed);
+        assertFalse(PasswordHashUtil.needsRehash(hashed));
+    }
+
+    @Test
+    public void iterateCountIsEmbedded() {
+        int original = PasswordHashUtil.getIterateCount();
+        try {
+            PasswordHashUtil.setIterateCount(original + 1);
+            String stronger = PasswordHashUtil.crypt("secret");
+            PasswordHashUtil.setIterateCount(original);
+            String weaker = PasswordHashUtil.crypt("secret");
+
+            assertTrue(PasswordHashUtil.passwordMatch("secret", stronger));
+            assertTrue(PasswordHashUtil.passwordMatch("secret", weaker));
+            assertFalse(PasswordHashUtil.needsRehash(stronger));
+
+            PasswordHashUtil.setIterateCount(original + 1);
+            assertTrue(PasswordHashUtil.needsRehash(weaker));
+        } finally {
+            PasswordHashUtil.setIterateCount(original);
+        }
+    }
+
+    @Test
+    public void binaryRoundTrip() {
+        byte[] hashed = PasswordHashUtil.cryptBinary("secret");
+        assertTrue(PasswordHashUtil.passwordMatch("secret", hashed));
+        assertTrue(PasswordHashUtil.passwordMatch("secret".toCharArray(),
+                hashed));
+        assertFalse(PasswordHashUtil.passwordMatch("Secret", hashed));
+        assertFalse(PasswordHashUtil.needsRehash(hashed));
+
+        String text = PasswordHashUtil.crypt("secret");
+        assertTrue(PasswordHashUtil.passwordMatch("secret",
+                PasswordHashUtil.toBinary(text)));
+    }
+
+    @Test
+    public void saltsDiffer() {
+        assertFalse(PasswordHashUtil.crypt("same").equals(
+                PasswordHashUtil.crypt("same")));
+        byte[] a = PasswordHashUtil.cryptBinary("same");
+        byte[] b = PasswordHashUtil.cryptBinary("same");
+        assertFalse(Arrays.equals(a, b));
+    }
+
+    /** Hashes made by the first version: [salt]$[hash], 1000 iterations */
+    @Test
+    public void legacyHashStillMatches() throws Exception {
+        String legacy = legacyCrypt("old password", salt('a'));
+
+        assertTrue(PasswordHashUtil.passwordMatch("old password", legacy));
+        assertFalse(PasswordHashUtil.passwordMatch("new password", legacy));
+        assertTrue(PasswordHashUtil.needsRehash(legacy));
+        assertTrue(PasswordHashUtil.passwordMatch("old password",
+                PasswordHashUtil.toBinary(legacy)));
+    }
+
+    /** The per-thread digest and buffers must not leak between threads */
+    @Test
+    public void concurrentHashingMatchesReference() throws Exception {
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            final char c = (char) ('a' + t);
+            Thread th = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20; i++) {
+                        String pass = "pass-" + c + "-" + i + "-"
+                                + "x".repeat(i * 7);
+                        String legacy = legacyCrypt(pass, salt(c));
+                        if (!PasswordHashUtil.passwordMatch(pass, legacy)) {
+                            throw new AssertionError("no match: " + pass);
+                        }
+                    }
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            threads.add(th);
+            th.start();
+        }
+        for (Thread th : threads) {
+            th.join();
+        }
+        assertEquals(0, errors.size(), errors.toString());
+    }
+
+    static String salt(char c) {
+        char[] chars = new char[64];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    /** The algorithm of the first version, for compatibility checks */
+    static String legacyCrypt(String src, String salt) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        byte[] saltBin = salt.getBytes(StandardCharsets.UTF_8);
+        byte[] res = src.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < 1000; i++) {
+            md.update(saltBin);
+            md.update(res);
+            res = md.digest();
+        }
+        return salt + "$" + Base64.getEncoder().encodeToString(res);
+    }
+}
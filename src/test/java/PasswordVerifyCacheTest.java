@@ -0,0 +1,119 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class PasswordVerifyCacheTest {
+
+    @Test
+    public void matchIsCached() {
+        PasswordVerifyCache cache = new PasswordVerifyCache(10, 60000);
+        String hashed = PasswordHashUtil.crypt("secret");
+
+        assertTrue(cache.passwordMatch("secret", hashed));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        assertTrue(cache.passwordMatch("secret".toCharArray(), hashed));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void hitIsReportedToMetrics() {
+        PasswordHashStats stats = new PasswordHashStats();
+        PasswordHashUtil.setMetrics(stats);
+        try {
+            PasswordVerifyCache cache = new PasswordVerifyCache(10, 60000);
+            String hashed = PasswordHashUtil.crypt("secret");
+
+            assertTrue(cache.passwordMatch("secret", hashed));
+            assertTrue(cache.passwordMatch("secret", hashed));
+            assertEquals(1, stats.getVerifyCount());
+            assertEquals(1, stats.getCacheHitCount());
+        } finally {
+            PasswordHashUtil.setMetrics(null);
+        }
+    }
+
+    @Test
+    public void mismatchIsNotCached() {
+        PasswordVerifyCache cache = new PasswordVerifyCache(10, 60000);
+        String hashed = PasswordHashUtil.crypt("secret");
+
+        assertFalse(cache.passwordMatch("wrong", hashed));
+        assertFalse(cache.passwordMatch("wrong", hashed));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, cache.size());
+    }
+
+    /** A cached match must not make a different password match */
+    @Test
+    public void otherPasswordIsNotAHit() {
+        PasswordVerifyCache cache = new PasswordVerifyCache(10, 60000);
+        String hashed = PasswordHashUtil.crypt("secret");
+
+        assertTrue(cache.passwordMatch("secret", hashed));
+        assertFalse(cache.passwordMatch("secreT", hashed));
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void expiredEntryIsVerifiedAgain() throws Exception {
+        PasswordVerifyCache cache = new PasswordVerifyCache(10, 1);
+        String hashed = PasswordHashUtil.crypt("secret");
+
+        assertTrue(cache.passwordMatch("secret", hashed));
+        Thread.sleep(5);
+        assertTrue(cache.passwordMatch("secret", hashed));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+        PasswordVerifyCache cache = new PasswordVerifyCache(2, 60000);
+        String a = PasswordHashUtil.crypt("a");
+        String b = PasswordHashUtil.crypt("b");
+        String c = PasswordHashUtil.crypt("c");
+
+        cache.passwordMatch("a", a);
+        cache.passwordMatch("b", b);
+        cache.passwordMatch("a", a);
+        cache.passwordMatch("c", c);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getHitCount());
+
+        cache.passwordMatch("a", a);
+        assertEquals(2, cache.getHitCount());
+        cache.passwordMatch("b", b);
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void clear() {
+        PasswordVerifyCache cache = new PasswordVerifyCache(10, 60000);
+        String hashed = PasswordHashUtil.crypt("secret");
+        cache.passwordMatch("secret", hashed);
+
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        cache.passwordMatch("secret", hashed);
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void badArguments() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new PasswordVerifyCache(0, 60000));
+        assertThrows(IllegalArgumentException.class,
+                () -> new PasswordVerifyCache(10, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> new PasswordVerifyCache(10, 60000).passwordMatch("x",
+                        null));
+    }
+}
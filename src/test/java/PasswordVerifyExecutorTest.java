@@ -0,0 +1,115 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.jupiter.api.Test;
+
+public class PasswordVerifyExecutorTest {
+
+    @Test
+    public void resultsAreCompletedAsynchronously() throws Exception {
+        String hashed = PasswordHashUtil.crypt("secret");
+        try (PasswordVerifyExecutor verifier = new PasswordVerifyExecutor(2, 10)) {
+            CompletableFuture<Boolean> ok = verifier.passwordMatch("secret",
+                    hashed);
+            CompletableFuture<Boolean> ng = verifier.passwordMatch(
+                    "wrong".toCharArray(), hashed);
+
+            assertTrue(ok.get());
+            assertFalse(ng.get());
+            assertEquals(0, verifier.getRejectedCount());
+        }
+    }
+
+    @Test
+    public void badHashFailsTheFuture() throws Exception {
+        try (PasswordVerifyExecutor verifier = new PasswordVerifyExecutor(1, 1)) {
+            CompletableFuture<Boolean> res = verifier.passwordMatch("secret",
+                    "broken");
+            ExecutionException e = assertThrowsExecution(res);
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void overflowIsRejected() throws Exception {
+        int original = PasswordHashUtil.getIterateCount();
+        String hashed;
+        try {
+            // slow enough that the single worker is still busy while the rest arrive
+            PasswordHashUtil.setIterateCount(200000);
+            hashed = PasswordHashUtil.crypt("secret");
+        } finally {
+            PasswordHashUtil.setIterateCount(original);
+        }
+
+        try (PasswordVerifyExecutor verifier = new PasswordVerifyExecutor(1, 1)) {
+            List<CompletableFuture<Boolean>> results = new ArrayList<CompletableFuture<Boolean>>();
+            for (int i = 0; i < 10; i++) {
+                results.add(verifier.passwordMatch("secret", hashed));
+            }
+
+            int rejected = 0;
+            for (CompletableFuture<Boolean> res : results) {
+                try {
+                    assertTrue(res.get());
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof RejectedExecutionException);
+                    rejected++;
+                }
+            }
+            assertTrue(rejected >= 8, "rejected " + rejected);
+            assertEquals(rejected, verifier.getRejectedCount());
+        }
+    }
+
+    @Test
+    public void closedExecutorRejects() throws Exception {
+        PasswordVerifyExecutor verifier = new PasswordVerifyExecutor(1, 1);
+        verifier.close();
+
+        ExecutionException e = assertThrowsExecution(verifier.passwordMatch(
+                "secret", PasswordHashUtil.crypt("secret")));
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+        assertEquals(1, verifier.getRejectedCount());
+    }
+
+    @Test
+    public void charPasswordIsClearedAfterVerification() throws Exception {
+        String hashed = PasswordHashUtil.crypt("secret");
+        char[] pass = "secret".toCharArray();
+        try (PasswordVerifyExecutor verifier = new PasswordVerifyExecutor(1, 1)) {
+            assertTrue(verifier.passwordMatch(pass, hashed).get());
+        }
+        assertArrayEquals(new char[6], pass);
+    }
+
+    @Test
+    public void charPasswordIsClearedWhenRejected() throws Exception {
+        char[] pass = "secret".toCharArray();
+        PasswordVerifyExecutor verifier = new PasswordVerifyExecutor(1, 1);
+        verifier.close();
+
+        ExecutionException e = assertThrowsExecution(verifier.passwordMatch(
+                pass, PasswordHashUtil.crypt("secret")));
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+        assertArrayEquals(new char[6], pass);
+    }
+
+    private static ExecutionException assertThrowsExecution(
+            CompletableFuture<Boolean> res) throws InterruptedException {
+        try {
+            res.get();
+        } catch (ExecutionException e) {
+            return e;
+        }
+        throw new AssertionError("completed normally");
+    }
+}
@@ -0,0 +1,109 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class PhaseEventLogTest {
+
+    private final AtomicLong lines = new AtomicLong();
+    private final List<String> messages = new ArrayList<String>();
+
+    private Logger logger() {
+        Logger logger = Logger.getLogger(PhaseEventLogTest.class.getName());
+        for (Handler h : logger.getHandlers()) {
+            logger.removeHandler(h);
+        }
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord r) {
+                for (String line : r.getMessage().split(
+                        System.lineSeparator())) {
+                    if (line.startsWith("[Thread:")) {
+                        lines.incrementAndGet();
+                    }
+                    synchronized (messages) {
+                        messages.add(line);
+                    }
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        return logger;
+    }
+
+    @AfterEach
+    public void disable() {
+        PhaseEventLog.disable();
+    }
+
+    @Test
+    public void disabledMeansSynchronous() {
+        PhaseEventLog.disable();
+        assertFalse(PhaseEventLog.offer(logger(), PhaseEventLog.JSF_AFTER, 1,
+                "RESTORE_VIEW"));
+    }
+
+    @Test
+    public void linesMatchSynchronousFormat() {
+        Logger logger = logger();
+        PhaseEventLog.enable(16);
+        assertTrue(PhaseEventLog.offer(logger, PhaseEventLog.ADF_BEFORE, 3,
+                "prepareModel"));
+        PhaseEventLog.disable();
+        assertEquals(PhaseEventLog.format(PhaseEventLog.ADF_BEFORE, Thread
+                .currentThread().getId(), 3, "prepareModel"), messages.get(0));
+    }
+
+    /** Every event is either written or counted as dropped */
+    @Test
+    public void noEventIsLost() throws Exception {
+        final Logger logger = logger();
+        final int threads = 4;
+        final int perThread = 50000;
+        long droppedBefore = PhaseEventLog.getDroppedCount();
+        PhaseEventLog.enable(128);
+
+        List<Thread> producers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            Thread th = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    if (!PhaseEventLog.offer(logger, PhaseEventLog.JSF_AFTER,
+                            i % 7, "PHASE")) {
+                        throw new AssertionError("disabled");
+                    }
+                }
+            });
+            producers.add(th);
+            th.start();
+        }
+        // replace the buffer while producers are writing into it
+        for (int i = 0; i < 10; i++) {
+            Thread.sleep(1);
+            PhaseEventLog.enable(128);
+        }
+        for (Thread th : producers) {
+            th.join();
+        }
+        PhaseEventLog.disable();
+
+        long dropped = PhaseEventLog.getDroppedCount() - droppedBefore;
+        assertEquals((long) threads * perThread, lines.get() + dropped);
+    }
+}
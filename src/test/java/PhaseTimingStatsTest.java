@@ -0,0 +1,69 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class PhaseTimingStatsTest {
+
+    @AfterEach
+    public void shutdown() {
+        PhaseTimingStats.shutdown();
+    }
+
+    @Test
+    public void countsAndPercentiles() {
+        PhaseTimingStats stats = PhaseTimingStats.getInstance("test");
+        for (int i = 1; i <= 100; i++) {
+            stats.record("RENDER_RESPONSE", i * 1000000L);
+        }
+        stats.record("RESTORE_VIEW", 5000L);
+
+        assertArrayEquals(new String[] { "RENDER_RESPONSE", "RESTORE_VIEW" },
+                stats.getPhaseNames());
+        assertEquals(100, stats.getCount("RENDER_RESPONSE"));
+        assertEquals(50500, stats.getMeanMicros("RENDER_RESPONSE"));
+        assertEquals(100000, stats.getMaxMicros("RENDER_RESPONSE"));
+        assertWithin(50000, stats.getPercentileMicros("RENDER_RESPONSE", 50));
+        assertWithin(99000, stats.getPercentileMicros("RENDER_RESPONSE", 99));
+        // never above the largest recorded value
+        assertEquals(5, stats.getPercentileMicros("RESTORE_VIEW", 99));
+        assertEquals(0, stats.getCount("INVOKE_APPLICATION"));
+        assertTrue(stats.dump()[1].startsWith("RESTORE_VIEW count=1 "),
+                stats.dump()[1]);
+
+        stats.reset();
+        assertEquals(0, stats.getCount("RENDER_RESPONSE"));
+        assertEquals(0, stats.getPercentileMicros("RENDER_RESPONSE", 50));
+    }
+
+    @Test
+    public void registeredUntilShutdown() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(
+                "study_adf:type=PhaseTimingStats,name=\"jmx\"");
+        PhaseTimingStats stats = PhaseTimingStats.getInstance("jmx");
+
+        assertSame(stats, PhaseTimingStats.getInstance("jmx"));
+        assertTrue(server.isRegistered(name));
+
+        PhaseTimingStats.shutdown();
+
+        assertFalse(server.isRegistered(name));
+        assertFalse(stats == PhaseTimingStats.getInstance("jmx"));
+        assertTrue(server.isRegistered(name));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected / 8, "expected "
+                + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,118 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+public class ProcedureCallTest {
+
+    private static final ProcedureCall GET_RATE = ProcedureCall
+            .function("RATE_PKG.GET_RATE", Types.NUMERIC)
+            .in("P_CURRENCY", Types.VARCHAR)
+            .in("P_COUNT", Types.INTEGER)
+            .out("P_SOURCE", Types.VARCHAR)
+            .inOut("P_AT", Types.TIMESTAMP)
+            .build();
+
+    @Test
+    public void statementText() {
+        assertEquals("begin ? := RATE_PKG.GET_RATE(P_CURRENCY => ?,"
+                + "P_COUNT => ?,P_SOURCE => ?,P_AT => ?); end;",
+                GET_RATE.getStatement());
+        assertEquals("begin PKG.PROC(); end;",
+                ProcedureCall.procedure("PKG.PROC").build().getStatement());
+    }
+
+    @Test
+    public void bindsByIndexWithTypedSetters() {
+        final Timestamp at = new Timestamp(1000L);
+        FakeJdbc db = new FakeJdbc().handler((sql, method, args) -> {
+            switch (method) {
+            case "getBigDecimal":
+                return new BigDecimal("1.5");
+            case "getString":
+                return "ECB";
+            case "getTimestamp":
+                return at;
+            default:
+                return FakeJdbc.DEFAULT;
+            }
+        });
+
+        ProcedureCall.Result res = GET_RATE.execute(db.connection(), "USD",
+                3, null);
+
+        assertEquals(Arrays.asList("registerOutParameter[1, 2]",
+                "setString[2, USD]", "setInt[3, 3]",
+                "registerOutParameter[4, 12]", "setNull[5, 93]",
+                "registerOutParameter[5, 93]", "execute"), db.calls(
+                "registerOutParameter", "set", "execute"));
+        assertEquals(new BigDecimal("1.5"), res.getReturnValue());
+        assertEquals("ECB", res.getOut(0));
+        assertEquals("ECB", res.getOut("P_SOURCE"));
+        assertEquals(at, res.getOut("P_AT"));
+        assertEquals(1, db.count("close"));
+    }
+
+    @Test
+    public void procedureHasNoReturnValue() {
+        ProcedureCall call = ProcedureCall.procedure("PKG.PROC")
+                .in("P_ID", Types.BIGINT).build();
+        FakeJdbc db = new FakeJdbc();
+
+        assertNull(call.execute(db.connection(), 42L).getReturnValue());
+        assertEquals(Arrays.asList("setLong[1, 42]"), db.calls("set"));
+    }
+
+    @Test
+    public void wrongNumberOfValues() {
+        FakeJdbc db = new FakeJdbc();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> GET_RATE.execute(db.connection(), "USD"));
+        assertThrows(IllegalArgumentException.class,
+                () -> GET_RATE.execute(db.connection(), "USD", 1, null).getOut(
+                        "P_NONE"));
+        assertEquals(1, db.prepared.size());
+    }
+
+    @Test
+    public void argsBindPrimitivesByType() {
+        ProcedureCall call = ProcedureCall.procedure("PKG.PROC")
+                .in("P_ID", Types.BIGINT).in("P_QTY", Types.INTEGER)
+                .in("P_PRICE", Types.DOUBLE).in("P_NAME", Types.VARCHAR)
+                .build();
+        FakeJdbc db = new FakeJdbc();
+        ProcedureCall.Args args = call.newArgs();
+
+        call.execute(db.connection(), args.set(0, 42L).set(1, 3)
+                .set(2, 1.5).set(3, "X"));
+        // values are kept, so only the changed ones are set again
+        call.execute(db.connection(), args.set(1, 4).setNull(3));
+
+        assertEquals(Arrays.asList("setLong[1, 42]", "setInt[2, 3]",
+                "setDouble[3, 1.5]", "setString[4, X]", "setLong[1, 42]",
+                "setInt[2, 4]", "setDouble[3, 1.5]", "setNull[4, 12]"),
+                db.calls("set"));
+    }
+
+    @Test
+    public void argsMustBeCompleteAndOfTheSameCall() {
+        ProcedureCall call = ProcedureCall.procedure("PKG.PROC")
+                .in("P_ID", Types.BIGINT).build();
+        FakeJdbc db = new FakeJdbc();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> call.execute(db.connection(), call.newArgs()));
+        assertThrows(IllegalArgumentException.class,
+                () -> call.execute(db.connection(), GET_RATE.newArgs()));
+        assertThrows(IllegalArgumentException.class,
+                () -> call.newArgs().set(1, 1L));
+        assertEquals(0, db.prepared.size());
+    }
+}
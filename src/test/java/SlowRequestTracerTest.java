@@ -0,0 +1,41 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class SlowRequestTracerTest {
+
+    @Test
+    public void keepsSlowestRequestsOfPage() throws Exception {
+        SlowRequestTracer tracer = SlowRequestTracer.getInstance();
+        tracer.reset();
+        tracer.setTopN(2);
+        for (int i = 0; i < 5; i++) {
+            tracer.begin();
+            tracer.phaseStarted(SlowRequestTracer.JSF, 6, "RENDER_RESPONSE");
+            tracer.phaseStarted(SlowRequestTracer.ADF, 9, "prepareRender");
+            Thread.sleep(i);
+            tracer.phaseEnded(SlowRequestTracer.ADF, 9);
+            tracer.phaseEnded(SlowRequestTracer.JSF, 6);
+            tracer.end("/page.jspx");
+        }
+
+        String[] lines = tracer.dumpPage("/page.jspx");
+        assertTrue(lines[0].startsWith("/page.jspx count=5 "), lines[0]);
+        // summary + 2 requests of (header + 2 phases)
+        assertEquals(1 + 2 * 3, lines.length);
+        assertTrue(lines[2].contains("JSF:RENDER_RESPONSE"), lines[2]);
+        assertTrue(lines[3].contains("adf:9:prepareRender"), lines[3]);
+        assertEquals(1, tracer.getPageCount());
+    }
+
+    @Test
+    public void untracedRequestIsIgnored() {
+        SlowRequestTracer tracer = SlowRequestTracer.getInstance();
+        tracer.reset();
+        // no begin(): e.g. a request that started before tracing was enabled
+        tracer.phaseStarted(SlowRequestTracer.JSF, 6, "RENDER_RESPONSE");
+        tracer.end("/other.jspx");
+        assertEquals(0, tracer.getPageCount());
+    }
+}
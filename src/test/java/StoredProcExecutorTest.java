@@ -0,0 +1,136 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+
+public class StoredProcExecutorTest {
+
+    /** Running calls of the fake procedure, and the most seen at once */
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+
+    private DataSource dataSource() {
+        return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { DataSource.class }, (p, m, args) -> {
+                    if (m.getName().equals("getConnection")) {
+                        return connection();
+                    }
+                    throw new UnsupportedOperationException(m.getName());
+                });
+    }
+
+    private Connection connection() {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { Connection.class }, (p, m, args) -> {
+                    if (m.getName().equals("prepareCall")) {
+                        return statement();
+                    }
+                    return null;
+                });
+    }
+
+    private CallableStatement statement() {
+        return (CallableStatement) Proxy.newProxyInstance(getClass()
+                .getClassLoader(), new Class<?>[] { CallableStatement.class },
+                (p, m, args) -> {
+                    if (m.getName().equals("execute")) {
+                        int n = running.incrementAndGet();
+                        maxRunning.accumulateAndGet(n, Math::max);
+                        try {
+                            gate.await(10, TimeUnit.SECONDS);
+                        } finally {
+                            running.decrementAndGet();
+                        }
+                        return Boolean.FALSE;
+                    }
+                    if (m.getName().equals("getObject")) {
+                        return "OK";
+                    }
+                    return (m.getReturnType() == boolean.class) ? Boolean.FALSE
+                            : (m.getReturnType() == int.class) ? 0 : null;
+                });
+    }
+
+    private static CompletableFuture<Object> call(StoredProcExecutor ex,
+            String name) {
+        return ex.callStoredFuncOnlyInParam(name, new HashMap<String, Object>(),
+                Types.VARCHAR);
+    }
+
+    @Test
+    public void perProcedureLimitIsRespected() throws Exception {
+        try (StoredProcExecutor ex = new StoredProcExecutor(dataSource(), 8,
+                100, 2)) {
+            List<CompletableFuture<Object>> fs =
+                    new ArrayList<CompletableFuture<Object>>();
+            for (int i = 0; i < 40; i++) {
+                fs.add(call(ex, "PKG.F"));
+            }
+            for (CompletableFuture<Object> f : fs) {
+                assertEquals("OK", f.get(10, TimeUnit.SECONDS));
+            }
+        }
+        assertTrue(maxRunning.get() <= 2, "max running: " + maxRunning.get());
+    }
+
+    @Test
+    public void waitingCallsAreBounded() throws Exception {
+        gate = new CountDownLatch(1);
+        try (StoredProcExecutor ex = new StoredProcExecutor(dataSource(), 4,
+                2, 1)) {
+            CompletableFuture<Object> running1 = call(ex, "PKG.F");
+            CompletableFuture<Object> waiting1 = call(ex, "PKG.F");
+            CompletableFuture<Object> waiting2 = call(ex, "PKG.F");
+            CompletableFuture<Object> over = call(ex, "PKG.F");
+            assertRejected(over);
+
+            gate.countDown();
+            assertEquals("OK", running1.get(10, TimeUnit.SECONDS));
+            assertEquals("OK", waiting1.get(10, TimeUnit.SECONDS));
+            assertEquals("OK", waiting2.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void closeRunsWaitingCalls() throws Exception {
+        gate = new CountDownLatch(1);
+        StoredProcExecutor ex = new StoredProcExecutor(dataSource(), 4, 10, 1);
+        CompletableFuture<Object> first = call(ex, "PKG.F");
+        CompletableFuture<Object> second = call(ex, "PKG.F");
+        ex.close();
+        assertRejected(call(ex, "PKG.G"));
+
+        gate.countDown();
+        assertEquals("OK", first.get(10, TimeUnit.SECONDS));
+        assertEquals("OK", second.get(10, TimeUnit.SECONDS));
+    }
+
+    private static void assertRejected(CompletableFuture<Object> f)
+            throws Exception {
+        try {
+            f.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException,
+                    e.getCause().toString());
+            return;
+        }
+        throw new AssertionError("not rejected");
+    }
+}
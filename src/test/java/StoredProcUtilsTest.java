@@ -0,0 +1,464 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.BatchUpdateException;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class StoredProcUtilsTest {
+
+    @Test
+    public void batchRunsInChunks() {
+        FakeJdbc db = new FakeJdbc();
+
+        StoredProcUtils.BatchResult res = StoredProcUtils.callStoredProcBatch(
+                db.connection(), "PKG.PROC", rows(7), 3);
+
+        assertEquals("begin PKG.PROC(A => ?,B => ?); end;", db.prepared.get(0));
+        assertEquals(1, db.prepared.size());
+        assertEquals(7, res.getRowCount());
+        assertEquals(3, res.getBatchCount());
+        assertArrayEquals(new int[] { 1, 1, 1 }, res.getUpdateCounts(0));
+        assertArrayEquals(new int[] { 1 }, res.getUpdateCounts(2));
+        assertTrue(res.getFailures().isEmpty());
+        assertEquals(7, db.count("addBatch"));
+    }
+
+    /** A failed chunk is recorded and the following chunks still run */
+    @Test
+    public void batchContinuesAfterFailedChunk() {
+        final BatchUpdateException error = new BatchUpdateException(
+                "ORA-00001", new int[] { 1, -3 });
+        final int[] executed = { 0 };
+        FakeJdbc db = new FakeJdbc().handler((sql, method, args) -> {
+            if (method.equals("executeBatch") && executed[0]++ == 1) {
+                throw error;
+            }
+            return FakeJdbc.DEFAULT;
+        });
+
+        StoredProcUtils.BatchResult res = StoredProcUtils.callStoredProcBatch(
+                db.connection(), "PKG.PROC", rows(7), 3);
+
+        assertEquals(3, res.getBatchCount());
+        assertEquals(1, res.getFailures().size());
+        assertSame(error, res.getFailures().get(1));
+        assertArrayEquals(new int[] { 1, -3 }, res.getUpdateCounts(1));
+        assertArrayEquals(new int[] { 1 }, res.getUpdateCounts(2));
+        assertEquals(1, db.count("clearBatch"));
+    }
+
+    /** Not every driver reports a failed batch as BatchUpdateException */
+    @Test
+    public void batchContinuesAfterSQLException() {
+        final SQLException error = new SQLException("Closed Connection");
+        final int[] executed = { 0 };
+        FakeJdbc db = new FakeJdbc().handler((sql, method, args) -> {
+            if (method.equals("executeBatch") && executed[0]++ == 1) {
+                throw error;
+            }
+            return FakeJdbc.DEFAULT;
+        });
+
+        StoredProcUtils.BatchResult res = StoredProcUtils.callStoredProcBatch(
+                db.connection(), "PKG.PROC", rows(7), 3);
+
+        assertEquals(3, res.getBatchCount());
+        assertSame(error, res.getFailures().get(1));
+        assertArrayEquals(new int[] { Statement.EXECUTE_FAILED,
+                Statement.EXECUTE_FAILED, Statement.EXECUTE_FAILED },
+                res.getUpdateCounts(1));
+        assertArrayEquals(new int[] { 1 }, res.getUpdateCounts(2));
+    }
+
+    /** Rows that cannot be batched are reported and the rest still run */
+    @Test
+    public void batchRejectsBadRows() {
+        FakeJdbc db = new FakeJdbc();
+        List<Map<String, Object>> rows = rows(5);
+        rows.get(1).put("C", "extra");
+        rows.get(3).put("B", Boolean.TRUE);
+
+        StoredProcUtils.BatchResult res = StoredProcUtils.callStoredProcBatch(
+                db.connection(), "PKG.PROC", rows, 2);
+
+        assertEquals(5, res.getRowCount());
+        assertEquals(2, res.getRejectedRows().size());
+        assertTrue(res.getRejectedRows().containsKey(1));
+        assertTrue(res.getRejectedRows().containsKey(3));
+        assertEquals(3, db.count("addBatch"));
+        assertArrayEquals(new int[] { 1, 1 }, res.getUpdateCounts(0));
+        assertArrayEquals(new int[] { 1 }, res.getUpdateCounts(1));
+        assertTrue(res.getFailures().isEmpty());
+    }
+
+    @Test
+    public void batchRejectsBadArguments() {
+        FakeJdbc db = new FakeJdbc();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> StoredProcUtils.callStoredProcBatch(db.connection(),
+                        "PKG.PROC", rows(1), 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> StoredProcUtils.callStoredProcBatch(db.connection(),
+                        "PKG.PROC", null, 10));
+    }
+
+    @Test
+    public void metadataGivesOrderAndTypes() {
+        List<String> lookups = new ArrayList<String>();
+        FakeJdbc db = new FakeJdbc().metaData(metaData(lookups,
+                new Object[] { "P_A", DatabaseMetaData.procedureColumnIn, 1,
+                        Types.INTEGER },
+                new Object[] { "P_B", DatabaseMetaData.procedureColumnIn, 2,
+                        Types.DATE }));
+        Map<String, Object> params = new LinkedHashMap<String, Object>();
+        params.put("p_b", null);
+        params.put("P_A", 5);
+
+        StoredProcUtils.setUseProcedureMetadata(true);
+        try {
+            StoredProcUtils.callStoredFuncOnlyInParam(db.connection(),
+                    "pkg.get_x", params, Types.VARCHAR);
+            StoredProcUtils.callStoredFuncOnlyInParam(db.connection(),
+                    "PKG.GET_X", params, Types.VARCHAR);
+        } finally {
+            StoredProcUtils.setUseProcedureMetadata(false);
+            StoredProcUtils.invalidateAllProcedureMetadata();
+        }
+
+        assertEquals("begin ? := pkg.get_x(P_A => ?,p_b => ?); end;",
+                db.prepared.get(0));
+        assertEquals(Arrays.asList("setObject[2, 5, 4]", "setNull[3, 91]"),
+                db.calls("set").subList(0, 2));
+        // "_" is escaped, and the signature is read only once
+        assertEquals(Arrays.asList("[PKG, null, GET\\_X, %]"), lookups);
+    }
+
+    @Test
+    public void overloadedProcedureIsBoundAsBefore() {
+        List<String> lookups = new ArrayList<String>();
+        FakeJdbc db = new FakeJdbc().metaData(metaData(lookups,
+                new Object[] { "P_A", DatabaseMetaData.procedureColumnIn, 1,
+                        Types.INTEGER },
+                new Object[] { "P_A", DatabaseMetaData.procedureColumnIn, 1,
+                        Types.VARCHAR }));
+        Map<String, Object> params = new LinkedHashMap<String, Object>();
+        params.put("P_A", null);
+
+        StoredProcUtils.setUseProcedureMetadata(true);
+        try {
+            StoredProcUtils.callStoredProcOnlyInParam(db.connection(),
+                    "PKG.GET_X", params);
+        } finally {
+            StoredProcUtils.setUseProcedureMetadata(false);
+            StoredProcUtils.invalidateAllProcedureMetadata();
+        }
+
+        assertEquals(Arrays.asList("setObject[1, ]"), db.calls("set"));
+    }
+
+    @Test
+    public void failedMetadataLookupFallsBack() {
+        final int[] lookups = { 0 };
+        FakeJdbc db = new FakeJdbc().metaData(FakeJdbc.proxy(
+                DatabaseMetaData.class, (p, m, args) -> {
+                    lookups[0]++;
+                    throw new SQLException("ORA-01031");
+                }));
+        Map<String, Object> params = new LinkedHashMap<String, Object>();
+        params.put("P_A", 5);
+
+        StoredProcUtils.setUseProcedureMetadata(true);
+        try {
+            StoredProcUtils.callStoredProcOnlyInParam(db.connection(),
+                    "PKG.PROC", params);
+            StoredProcUtils.callStoredProcOnlyInParam(db.connection(),
+                    "PKG.PROC", params);
+            assertEquals(1, lookups[0]);
+
+            StoredProcUtils.invalidateProcedureMetadata("PKG.PROC");
+            StoredProcUtils.callStoredProcOnlyInParam(db.connection(),
+                    "PKG.PROC", params);
+            assertEquals(2, lookups[0]);
+        } finally {
+            StoredProcUtils.setUseProcedureMetadata(false);
+            StoredProcUtils.invalidateAllProcedureMetadata();
+        }
+
+        assertEquals(Arrays.asList("setObject[1, 5]", "setObject[1, 5]",
+                "setObject[1, 5]"), db.calls("set"));
+    }
+
+    @Test
+    public void namesDifferingOnlyInCaseAreRejected() {
+        FakeJdbc db = new FakeJdbc().metaData(metaData(
+                new ArrayList<String>(), new Object[] { "P_A",
+                        DatabaseMetaData.procedureColumnIn, 1, Types.INTEGER }));
+        Map<String, Object> params = new LinkedHashMap<String, Object>();
+        params.put("P_A", 1);
+        params.put("p_a", 2);
+
+        StoredProcUtils.setUseProcedureMetadata(true);
+        try {
+            assertThrows(IllegalArgumentException.class,
+                    () -> StoredProcUtils.callStoredProcOnlyInParam(
+                            db.connection(), "PKG.PROC", params));
+        } finally {
+            StoredProcUtils.setUseProcedureMetadata(false);
+            StoredProcUtils.invalidateAllProcedureMetadata();
+        }
+        assertEquals(0, db.prepared.size());
+    }
+
+    @Test
+    public void openCursorStreamsRows() {
+        final ResultSet cursor = FakeJdbc.resultSet(new String[] { "ID",
+                "NAME" }, new Object[] { 1, "a" }, new Object[] { 2, "b" });
+        FakeJdbc db = new FakeJdbc().handler((sql, method, args) -> {
+            if (method.equals("getObject")) {
+                return (Integer) args[0] == 2 ? cursor : (Object) 2;
+            }
+            return FakeJdbc.DEFAULT;
+        });
+
+        List<Map<String, Object>> read = new ArrayList<Map<String, Object>>();
+        try (StoredProcUtils.CursorRows rows = StoredProcUtils.openCursor(
+                db.connection(), "PKG.LIST_PROC", cursorParams(), Types.NULL,
+                "P_ROWS", 500)) {
+            assertEquals(2, rows.getOutValues().get("P_TOTAL"));
+            assertFalse(rows.getOutValues().containsKey("P_ROWS"));
+            while (rows.hasNext()) {
+                read.add(rows.next());
+            }
+            assertEquals(0, db.count("close"));
+        }
+
+        assertEquals(2, read.size());
+        assertEquals("{ID=2, NAME=b}", read.get(1).toString());
+        assertEquals(Arrays.asList("setFetchSize[500]"),
+                db.calls("setFetchSize"));
+        assertEquals(1, db.count("close"));
+        assertTrue(isClosed(cursor));
+    }
+
+    @Test
+    public void forEachCursorRowClosesOnError() {
+        final ResultSet cursor = FakeJdbc.resultSet(new String[] { "ID" },
+                new Object[] { 1 }, new Object[] { 2 });
+        FakeJdbc db = new FakeJdbc().handler((sql, method, args) -> {
+            if (method.equals("getObject")) {
+                return (Integer) args[0] == 2 ? cursor : null;
+            }
+            return FakeJdbc.DEFAULT;
+        });
+        final List<Object> ids = new ArrayList<Object>();
+
+        assertThrows(RuntimeException.class, () -> StoredProcUtils
+                .forEachCursorRow(db.connection(), "PKG.LIST_PROC",
+                        cursorParams(), Types.NULL, "P_ROWS", 100, rs -> {
+                            ids.add(rs.getObject("ID"));
+                            throw new SQLException("handler failed");
+                        }));
+
+        assertEquals(Arrays.asList((Object) 1), ids);
+        assertEquals(1, db.count("close"));
+        assertTrue(isClosed(cursor));
+    }
+
+    /** A REF CURSOR OUT parameter that was never opened is read as NULL */
+    @Test
+    public void nullCursorHasNoRows() {
+        FakeJdbc db = new FakeJdbc();
+
+        try (StoredProcUtils.CursorRows rows = StoredProcUtils.openCursor(
+                db.connection(), "PKG.LIST_PROC", cursorParams(), Types.NULL,
+                "P_ROWS", 100)) {
+            assertFalse(rows.hasNext());
+            assertNull(rows.getResultSet());
+        }
+        assertEquals(1, db.count("close"));
+
+        final int[] handled = { 0 };
+        StoredProcUtils.forEachCursorRow(db.connection(), "PKG.LIST_PROC",
+                cursorParams(), Types.NULL, "P_ROWS", 100, rs -> handled[0]++);
+        assertEquals(0, handled[0]);
+        assertEquals(2, db.count("close"));
+    }
+
+    @Test
+    public void openCursorNeedsCursorParameter() {
+        FakeJdbc db = new FakeJdbc();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> StoredProcUtils.openCursor(db.connection(),
+                        "PKG.LIST_PROC", cursorParams(), Types.NULL, "P_ID",
+                        100));
+    }
+
+    @Test
+    public void cachedFunctionHitsAndInvalidation() {
+        FakeJdbc db = new FakeJdbc().handler((sql, method, args) -> {
+            if (method.equals("getObject")) {
+                return "rate";
+            }
+            return FakeJdbc.DEFAULT;
+        });
+        Map<String, Object> params = new LinkedHashMap<String, Object>();
+        params.put("P_CURRENCY", "USD");
+        Map<String, Object> sameParams = new LinkedHashMap<String, Object>();
+        sameParams.put("p_currency", "USD");
+        Map<String, Object> otherParams = new LinkedHashMap<String, Object>();
+        otherParams.put("P_CURRENCY", "EUR");
+
+        StoredProcUtils.ResultCache rc = StoredProcUtils
+                .registerCacheableFunction("RATE_PKG.GET_RATE", 10, 60000);
+        try {
+            assertSame(rc, StoredProcUtils.getResultCache("rate_pkg.get_rate"));
+            assertEquals("rate", call(db, params));
+            assertEquals("rate", call(db, sameParams));
+            assertEquals("rate", call(db, otherParams));
+            assertEquals(2, db.count("execute"));
+            assertEquals(1, rc.getHitCount());
+            assertEquals(2, rc.getMissCount());
+            assertEquals(2, rc.size());
+
+            StoredProcUtils.invalidateResultCache("RATE_PKG.GET_RATE");
+            assertEquals(0, rc.size());
+            call(db, params);
+            assertEquals(3, db.count("execute"));
+
+            StoredProcUtils.unregisterCacheableFunction("RATE_PKG.GET_RATE");
+            call(db, params);
+            call(db, params);
+            assertEquals(5, db.count("execute"));
+        } finally {
+            StoredProcUtils.unregisterCacheableFunction("RATE_PKG.GET_RATE");
+        }
+    }
+
+    /** A caller changing a cached Date must not change what others get */
+    @Test
+    public void cachedDateIsCopied() {
+        FakeJdbc db = new FakeJdbc().handler((sql, method, args) -> {
+            if (method.equals("getObject")) {
+                return new Timestamp(1000L);
+            }
+            return FakeJdbc.DEFAULT;
+        });
+        Map<String, Object> params = new LinkedHashMap<String, Object>();
+        params.put("P_CURRENCY", "USD");
+
+        StoredProcUtils.registerCacheableFunction("RATE_PKG.GET_RATE", 10,
+                60000);
+        try {
+            Timestamp first = (Timestamp) call(db, params);
+            first.setTime(0L);
+            Timestamp second = (Timestamp) call(db, params);
+            second.setTime(0L);
+
+            assertEquals(new Timestamp(1000L), call(db, params));
+            assertEquals(1, db.count("execute"));
+        } finally {
+            StoredProcUtils.unregisterCacheableFunction("RATE_PKG.GET_RATE");
+        }
+    }
+
+    @Test
+    public void failedCallIsNotCached() {
+        final int[] executed = { 0 };
+        FakeJdbc db = new FakeJdbc().handler((sql, method, args) -> {
+            if (method.equals("execute") && executed[0]++ == 0) {
+                throw new SQLException("ORA-04068");
+            }
+            return FakeJdbc.DEFAULT;
+        });
+        Map<String, Object> params = new LinkedHashMap<String, Object>();
+        params.put("P_CURRENCY", "USD");
+
+        StoredProcUtils.ResultCache rc = StoredProcUtils
+                .registerCacheableFunction("RATE_PKG.GET_RATE", 10, 60000);
+        try {
+            assertThrows(RuntimeException.class, () -> call(db, params));
+            assertEquals(0, rc.size());
+            assertNull(call(db, params));
+            assertNull(call(db, params));
+            assertEquals(1, rc.getHitCount());
+        } finally {
+            StoredProcUtils.unregisterCacheableFunction("RATE_PKG.GET_RATE");
+        }
+    }
+
+    // private methods -----------------------------------------
+
+    private static Object call(FakeJdbc db, Map<String, Object> params) {
+        return StoredProcUtils.callStoredFuncOnlyInParam(db.connection(),
+                "RATE_PKG.GET_RATE", params, Types.VARCHAR);
+    }
+
+    private static Map<String, StoredProcUtils.BindParam> cursorParams() {
+        Map<String, StoredProcUtils.BindParam> params =
+                new LinkedHashMap<String, StoredProcUtils.BindParam>();
+        params.put("P_ID", new StoredProcUtils.BindParam(
+                StoredProcUtils.InOut.IN, Types.NUMERIC, 7));
+        params.put("P_ROWS", new StoredProcUtils.BindParam(
+                StoredProcUtils.InOut.OUT, StoredProcUtils.ORACLE_CURSOR, null));
+        params.put("P_TOTAL", new StoredProcUtils.BindParam(
+                StoredProcUtils.InOut.OUT, Types.NUMERIC, null));
+        return params;
+    }
+
+    private static boolean isClosed(ResultSet rs) {
+        try {
+            return rs.isClosed();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static DatabaseMetaData metaData(final List<String> lookups,
+            final Object[]... columns) {
+        return FakeJdbc.proxy(DatabaseMetaData.class, (p, m, args) -> {
+            switch (m.getName()) {
+            case "storesUpperCaseIdentifiers":
+                return true;
+            case "getSearchStringEscape":
+                return "\\";
+            case "getProcedureColumns":
+                lookups.add(Arrays.toString(args));
+                return FakeJdbc.resultSet(new String[] { "COLUMN_NAME",
+                        "COLUMN_TYPE", "ORDINAL_POSITION", "DATA_TYPE" },
+                        "PKG".equals(args[0]) ? columns : new Object[0][]);
+            default:
+                return null;
+            }
+        });
+    }
+
+    private static List<Map<String, Object>> rows(int n) {
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < n; i++) {
+            Map<String, Object> row = new LinkedHashMap<String, Object>();
+            row.put("A", i);
+            row.put("B", "b" + i);
+            rows.add(row);
+        }
+        return rows;
+    }
+}
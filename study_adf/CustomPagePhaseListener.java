@@ -1,3 +1,4 @@
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static oracle.adf.controller.v2.lifecycle.Lifecycle.getPhaseName;
@@ -6,6 +7,9 @@ import oracle.adf.controller.v2.lifecycle.PagePhaseListener;
 
 /**
  * The PagePhaselistener which outputs an order of the phase of ADF to a log.
+ * The log can be written asynchronously (see {@link PhaseEventLog}).
+ * The phases are also added to the request's timeline in
+ * {@link SlowRequestTracer}.
  * Usage: write into META-INF/adf-settings.xml
  */
 public class CustomPagePhaseListener implements PagePhaseListener {
@@ -13,22 +17,37 @@ public class CustomPagePhaseListener implements PagePhaseListener {
     private static final Logger logger =
         Logger.getLogger(CustomPagePhaseListener.class.getName());
 
+    private static final SlowRequestTracer tracer =
+        SlowRequestTracer.getInstance();
+
     public CustomPagePhaseListener() {
     }
 
 
     public void afterPhase(PagePhaseEvent pagePhaseEvent) {
-        logger.info(String.format("[Thread:%d]called adf:afterPhase --> Phase:[%d:%s]",
-                                  Thread.currentThread().getId(),
-                                  pagePhaseEvent.getPhaseId(),
-                                  getPhaseName(pagePhaseEvent.getPhaseId())));
+        tracer.phaseEnded(SlowRequestTracer.ADF, pagePhaseEvent.getPhaseId());
+        log(PhaseEventLog.ADF_AFTER, pagePhaseEvent.getPhaseId());
     }
 
     public void beforePhase(PagePhaseEvent pagePhaseEvent) {
-        logger.info(String.format("[Thread:%d]called adf:beforePhase --> Phase:[%d:%s]",
-                                  Thread.currentThread().getId(),
-                                  pagePhaseEvent.getPhaseId(),
-                                  getPhaseName(pagePhaseEvent.getPhaseId())));
+        int phaseId = pagePhaseEvent.getPhaseId();
+        log(PhaseEventLog.ADF_BEFORE, phaseId);
+        tracer.phaseStarted(SlowRequestTracer.ADF, phaseId,
+                            getPhaseName(phaseId));
+    }
+
+    // private methods -----------------------------------------
+
+    private static void log(int kind, int phaseId) {
+        if (!logger.isLoggable(Level.INFO)) {
+            return;
+        }
+        if (!PhaseEventLog.offer(logger, kind, phaseId,
+                                 getPhaseName(phaseId))) {
+            logger.info(PhaseEventLog.format(kind,
+                                             Thread.currentThread().getId(),
+                                             phaseId, getPhaseName(phaseId)));
+        }
     }
 
 
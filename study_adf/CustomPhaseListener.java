@@ -1,11 +1,20 @@
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.faces.component.UIViewRoot;
+import javax.faces.context.FacesContext;
 import javax.faces.event.PhaseEvent;
 import javax.faces.event.PhaseId;
 import javax.faces.event.PhaseListener;
 
 /**
- * The Phaselistener which outputs an order of the phase of JSF to a log.
+ * The Phaselistener which outputs an order of the phase of JSF to a log,
+ * and measures the duration of each phase.
+ * The durations are aggregated per phase and exposed over JMX as
+ * "study_adf:type=PhaseTimingStats,name=JSF" (see {@link PhaseTimingStats}).
+ * The log can be written asynchronously (see {@link PhaseEventLog}).
+ * Each request is also traced by {@link SlowRequestTracer}, from
+ * RESTORE_VIEW to RENDER_RESPONSE.
  * Usage: write into faces-config.xml
  */
 @SuppressWarnings("serial")
@@ -14,23 +23,94 @@ public class CustomPhaseListener implements PhaseListener {
     private static final Logger logger =
         Logger.getLogger(CustomPhaseListener.class.getName());
 
+    /**
+     * Start time (System.nanoTime()) of the running phase of each ordinal on
+     * this thread; 0 if not running. beforePhase and afterPhase of a phase
+     * are called on the same request thread.
+     */
+    private static final ThreadLocal<long[]> phaseStarts =
+        new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[8];
+        }
+    };
+
+    private static final SlowRequestTracer tracer =
+        SlowRequestTracer.getInstance();
+
+    private transient PhaseTimingStats stats;
+
     public CustomPhaseListener() {
         super();
     }
 
     public void afterPhase(PhaseEvent phaseEvent) {
-        logger.info(String.format("[Thread:%d]called JSF:afterPhase --> Phase:[%s]",
-                                  Thread.currentThread().getId(),
-                                  phaseEvent.getPhaseId().toString()));
+        long now = System.nanoTime();
+        PhaseId phaseId = phaseEvent.getPhaseId();
+        long[] starts = phaseStarts.get();
+        int ordinal = phaseId.getOrdinal();
+        if (ordinal < starts.length && starts[ordinal] != 0L) {
+            getStats().record(phaseId.toString(), now - starts[ordinal]);
+            starts[ordinal] = 0L;
+        }
+
+        tracer.phaseEnded(SlowRequestTracer.JSF, ordinal);
+        FacesContext context = phaseEvent.getFacesContext();
+        if (phaseId == PhaseId.RENDER_RESPONSE ||
+            (context != null && context.getResponseComplete())) {
+            tracer.end(viewIdOf(context));
+        }
+
+        log(PhaseEventLog.JSF_AFTER, phaseId);
     }
 
     public void beforePhase(PhaseEvent phaseEvent) {
-        logger.info(String.format("[Thread:%d]called JSF:beforePhase --> Phase:[%s]",
-                                  Thread.currentThread().getId(),
-                                  phaseEvent.getPhaseId().toString()));
+        PhaseId phaseId = phaseEvent.getPhaseId();
+        log(PhaseEventLog.JSF_BEFORE, phaseId);
+
+        if (phaseId == PhaseId.RESTORE_VIEW) {
+            tracer.begin();
+        }
+        tracer.phaseStarted(SlowRequestTracer.JSF, phaseId.getOrdinal(),
+                            phaseId.toString());
+
+        long[] starts = phaseStarts.get();
+        int ordinal = phaseId.getOrdinal();
+        if (ordinal < starts.length) {
+            starts[ordinal] = System.nanoTime();
+        }
     }
 
     public PhaseId getPhaseId() {
         return PhaseId.ANY_PHASE;
     }
+
+    // private methods -----------------------------------------
+
+    private static void log(int kind, PhaseId phaseId) {
+        if (!logger.isLoggable(Level.INFO)) {
+            return;
+        }
+        if (!PhaseEventLog.offer(logger, kind, phaseId.getOrdinal(),
+                                 phaseId.toString())) {
+            logger.info(PhaseEventLog.format(kind,
+                                             Thread.currentThread().getId(),
+                                             phaseId.getOrdinal(),
+                                             phaseId.toString()));
+        }
+    }
+
+    private static String viewIdOf(FacesContext context) {
+        UIViewRoot viewRoot = (context == null) ? null : context.getViewRoot();
+        return (viewRoot == null) ? null : viewRoot.getViewId();
+    }
+
+    private PhaseTimingStats getStats() {
+        // not kept across serialization of the listener
+        if (stats == null) {
+            stats = PhaseTimingStats.getInstance("JSF");
+        }
+        return stats;
+    }
 }
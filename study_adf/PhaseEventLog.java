@@ -0,0 +1,298 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Asynchronous, batched output of the phase logs of CustomPhaseListener and
+ * CustomPagePhaseListener.
+ * When enabled, a listener only writes a small record (thread id, phase) into
+ * a bounded lock-free ring buffer; a daemon thread formats the records and
+ * writes them to the listener's logger, one log record per batch. When the
+ * buffer is full, events are dropped and counted instead of blocking the
+ * request thread. The thread sleeps while the buffer is empty, and is woken
+ * by the next event.
+ * Usage: start the server with -Dstudy_adf.asyncPhaseLog=true (and
+ * optionally -Dstudy_adf.asyncPhaseLog.capacity=8192), or call
+ * {@link #enable(int)} at startup.
+ */
+public class PhaseEventLog {
+
+    /** Kinds of event, which decide the format of a line */
+    static final int JSF_BEFORE = 0;
+    static final int JSF_AFTER = 1;
+    static final int ADF_BEFORE = 2;
+    static final int ADF_AFTER = 3;
+
+    private static final int MAX_BATCH = 256;
+    /** Set in {@code tail} when the buffer is retired; no slot can be claimed */
+    private static final long CLOSED = 1L << 62;
+
+    private static volatile PhaseEventLog instance;
+    private static final AtomicLong dropped = new AtomicLong();
+
+    static {
+        if (Boolean.getBoolean("study_adf.asyncPhaseLog")) {
+            enable(Integer.getInteger("study_adf.asyncPhaseLog.capacity",
+                                      8192));
+        }
+    }
+
+    private final int mask;
+    /**
+     * Sequence of each slot (Vyukov's bounded queue): a slot at position p
+     * is free to write when its sequence is p, and readable when p + 1.
+     */
+    private final AtomicLongArray sequences;
+    private final Logger[] loggers;
+    private final int[] kinds;
+    private final long[] threadIds;
+    private final int[] phaseIds;
+    private final String[] phaseNames;
+
+    private final AtomicLong tail = new AtomicLong();
+    /** Read position; used by the drain thread only */
+    private long head = 0L;
+    private long reportedDropped = dropped.get();
+    /** true while the drain thread is (about to be) parked */
+    private volatile boolean sleeping = false;
+    private final Thread drainer;
+
+    /**
+     * Start asynchronous logging. If already enabled, the previous buffer is
+     * replaced; events already written into it are still logged.
+     *
+     * @param capacity number of events the buffer holds (rounded up to a
+     *                 power of two)
+     */
+    public static synchronized void enable(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("bad capacity: " + capacity);
+        }
+        PhaseEventLog old = instance;
+        instance = new PhaseEventLog(capacity);
+        if (old != null) {
+            old.stop();
+        }
+    }
+
+    /**
+     * Stop asynchronous logging; listeners log synchronously again. Events
+     * already in the buffer are written.
+     */
+    public static synchronized void disable() {
+        PhaseEventLog old = instance;
+        instance = null;
+        if (old != null) {
+            old.stop();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return instance != null;
+    }
+
+    /**
+     * @return number of events dropped because the buffer was full, since
+     *         the class was loaded
+     */
+    public static long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Write an event into the buffer. Never blocks.
+     *
+     * @return false if asynchronous logging is disabled, so that the caller
+     *         should log synchronously
+     */
+    static boolean offer(Logger logger, int kind, int phaseId,
+                         String phaseName) {
+        while (true) {
+            PhaseEventLog log = instance;
+            if (log == null) {
+                return false;
+            }
+            if (log.put(logger, kind, phaseId, phaseName)) {
+                return true;
+            }
+            // retired by enable()/disable(); use the new one, if any
+        }
+    }
+
+    /**
+     * Format an event. Also used by the listeners for synchronous logging, so
+     * both modes write the same lines.
+     */
+    static String format(int kind, long threadId, int phaseId,
+                         String phaseName) {
+        switch (kind) {
+        case JSF_BEFORE:
+            return String.format("[Thread:%d]called JSF:beforePhase --> Phase:[%s]",
+                                 threadId, phaseName);
+        case JSF_AFTER:
+            return String.format("[Thread:%d]called JSF:afterPhase --> Phase:[%s]",
+                                 threadId, phaseName);
+        case ADF_BEFORE:
+            return String.format("[Thread:%d]called adf:beforePhase --> Phase:[%d:%s]",
+                                 threadId, phaseId, phaseName);
+        default:
+            return String.format("[Thread:%d]called adf:afterPhase --> Phase:[%d:%s]",
+                                 threadId, phaseId, phaseName);
+        }
+    }
+
+    // private methods -----------------------------------------
+
+    private PhaseEventLog(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.loggers = new Logger[size];
+        this.kinds = new int[size];
+        this.threadIds = new long[size];
+        this.phaseIds = new int[size];
+        this.phaseNames = new String[size];
+
+        this.drainer = new Thread(new Runnable() {
+            public void run() {
+                drainLoop();
+            }
+        }, "phase-event-log");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * @return false if this buffer is retired, true if the event was written
+     *         or dropped
+     */
+    private boolean put(Logger logger, int kind, int phaseId,
+                        String phaseName) {
+        long pos = tail.get();
+        while (true) {
+            if ((pos & CLOSED) != 0) {
+                return false;
+            }
+            int idx = (int)(pos & mask);
+            long diff = sequences.get(idx) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    loggers[idx] = logger;
+                    kinds[idx] = kind;
+                    threadIds[idx] = Thread.currentThread().getId();
+                    phaseIds[idx] = phaseId;
+                    phaseNames[idx] = phaseName;
+                    // publish; a volatile write, so that either the drain
+                    // thread sees this slot or we see it sleeping
+                    sequences.set(idx, pos + 1);
+                    if (sleeping) {
+                        LockSupport.unpark(drainer);
+                    }
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                dropped.incrementAndGet(); // full
+                return true;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Retire this buffer: no slot can be claimed any more, and the drain
+     * thread exits after writing the events in already claimed slots.
+     */
+    private void stop() {
+        long t = tail.get();
+        while ((t & CLOSED) == 0 && !tail.compareAndSet(t, t | CLOSED)) {
+            t = tail.get();
+        }
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join(1000L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        StringBuilder batch = new StringBuilder();
+        while (true) {
+            long t = tail.get();
+            if (drainBatch(batch) > 0) {
+                continue;
+            }
+            if ((t & CLOSED) != 0) {
+                if (head == (t & ~CLOSED)) {
+                    return;
+                }
+                Thread.yield(); // a claimed slot is not yet published
+                continue;
+            }
+            sleeping = true;
+            if (!isReadable() && (tail.get() & CLOSED) == 0) {
+                LockSupport.park(this);
+            }
+            sleeping = false;
+        }
+    }
+
+    private boolean isReadable() {
+        return sequences.get((int)(head & mask)) == head + 1;
+    }
+
+    /**
+     * Write up to MAX_BATCH events, one log record per run of events of the
+     * same logger.
+     *
+     * @return number of events written
+     */
+    private int drainBatch(StringBuilder batch) {
+        int n = 0;
+        Logger current = null;
+        while (n < MAX_BATCH) {
+            if (!isReadable()) {
+                break; // empty, or not yet published
+            }
+            int idx = (int)(head & mask);
+            Logger logger = loggers[idx];
+            String line =
+                format(kinds[idx], threadIds[idx], phaseIds[idx], phaseNames[idx]);
+            loggers[idx] = null;
+            phaseNames[idx] = null;
+            sequences.lazySet(idx, head + mask + 1); // free the slot
+            head++;
+            n++;
+
+            if (current != null && current != logger) {
+                flush(current, batch);
+            }
+            current = logger;
+            if (batch.length() > 0) {
+                batch.append(System.lineSeparator());
+            }
+            batch.append(line);
+        }
+        if (current != null) {
+            long d = dropped.get();
+            if (d != reportedDropped) {
+                batch.append(System.lineSeparator()).append("(")
+                     .append(d - reportedDropped).append(" phase events dropped)");
+                reportedDropped = d;
+            }
+            flush(current, batch);
+        }
+        return n;
+    }
+
+    private static void flush(Logger logger, StringBuilder batch) {
+        logger.info(batch.toString());
+        batch.setLength(0);
+    }
+}
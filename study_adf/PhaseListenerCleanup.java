@@ -0,0 +1,31 @@
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Releases what CustomPhaseListener and CustomPagePhaseListener leave
+ * outside the application when it is stopped: the MBeans of
+ * {@link PhaseTimingStats} and {@link SlowRequestTracer}, and the drain
+ * thread of {@link PhaseEventLog}. Otherwise they keep the application's
+ * class loader alive after every redeploy.
+ * Usage: write into web.xml
+ * <pre>
+ * &lt;listener&gt;
+ *   &lt;listener-class&gt;PhaseListenerCleanup&lt;/listener-class&gt;
+ * &lt;/listener&gt;
+ * </pre>
+ */
+public class PhaseListenerCleanup implements ServletContextListener {
+
+    public PhaseListenerCleanup() {
+        super();
+    }
+
+    public void contextInitialized(ServletContextEvent servletContextEvent) {
+    }
+
+    public void contextDestroyed(ServletContextEvent servletContextEvent) {
+        PhaseEventLog.disable();
+        SlowRequestTracer.getInstance().shutdown();
+        PhaseTimingStats.shutdown();
+    }
+}
@@ -0,0 +1,204 @@
+import java.lang.management.ManagementFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Durations of lifecycle phases: a counter and a latency histogram per phase.
+ * Exposed over JMX as "study_adf:type=PhaseTimingStats,name=[name]".
+ * Recording is lock-free and allocates nothing once a phase has been seen.
+ * Call {@link #shutdown()} when the application is stopped (see
+ * {@link PhaseListenerCleanup}).
+ * The histogram is the {@link LatencyHistogram} of the top-level sources,
+ * which has to be deployed together with this class.
+ */
+public class PhaseTimingStats implements PhaseTimingStatsMBean {
+
+    private static final Logger logger =
+        Logger.getLogger(PhaseTimingStats.class.getName());
+
+    private static final ConcurrentMap<String, PhaseTimingStats> instances =
+        new ConcurrentHashMap<String, PhaseTimingStats>();
+
+    /** Phases in the order they were first seen, which is the lifecycle order */
+    private final ConcurrentMap<String, Phase> phases =
+        new ConcurrentHashMap<String, Phase>();
+    private final List<String> order = new ArrayList<String>();
+
+    /**
+     * Get the stats of the given name, creating and registering it to the
+     * platform MBeanServer on the first call. A failure to register is
+     * logged and does not prevent recording.
+     */
+    public static PhaseTimingStats getInstance(String name) {
+        PhaseTimingStats stats = instances.get(name);
+        if (stats != null) {
+            return stats;
+        }
+        PhaseTimingStats newStats = new PhaseTimingStats();
+        stats = instances.putIfAbsent(name, newStats);
+        if (stats != null) {
+            return stats;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = objectNameOf(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(newStats, objectName);
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "cannot register PhaseTimingStats", e);
+        }
+        return newStats;
+    }
+
+    /**
+     * Unregister all stats from the platform MBeanServer and forget them, so
+     * that nothing outside the application refers to its classes any more.
+     * Stats obtained before keep recording, but are no longer exposed.
+     */
+    public static void shutdown() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (String name : instances.keySet()) {
+            instances.remove(name);
+            try {
+                ObjectName objectName = objectNameOf(name);
+                if (server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+            } catch (JMException e) {
+                logger.log(Level.WARNING, "cannot unregister PhaseTimingStats",
+                           e);
+            }
+        }
+    }
+
+    /**
+     * Record one execution of a phase.
+     */
+    public void record(String phaseName, long nanos) {
+        Phase phase = phases.get(phaseName);
+        if (phase == null) {
+            phase = phaseOf(phaseName);
+        }
+        phase.record(nanos);
+    }
+
+    public String[] getPhaseNames() {
+        synchronized (order) {
+            return order.toArray(new String[order.size()]);
+        }
+    }
+
+    public long getCount(String phaseName) {
+        Phase phase = phases.get(phaseName);
+        return (phase == null) ? 0L : phase.count.get();
+    }
+
+    public long getMeanMicros(String phaseName) {
+        Phase phase = phases.get(phaseName);
+        if (phase == null) {
+            return 0L;
+        }
+        long count = phase.count.get();
+        return (count == 0) ? 0L : phase.totalNanos.get() / count / 1000;
+    }
+
+    public long getMaxMicros(String phaseName) {
+        Phase phase = phases.get(phaseName);
+        return (phase == null) ? 0L : phase.maxNanos.get() / 1000;
+    }
+
+    public long getPercentileMicros(String phaseName, double percentile) {
+        Phase phase = phases.get(phaseName);
+        return (phase == null) ? 0L :
+               phase.percentile(percentile) / 1000;
+    }
+
+    /**
+     * @return one line per phase: count, mean, p50/p90/p99 and max (us)
+     */
+    public String[] dump() {
+        List<String> lines = new ArrayList<String>();
+        for (String name : getPhaseNames()) {
+            Phase phase = phases.get(name);
+            lines.add(String.format("%s count=%d mean=%dus p50=%dus p90=%dus p99=%dus max=%dus",
+                                    name, phase.count.get(),
+                                    getMeanMicros(name),
+                                    phase.percentile(50) / 1000,
+                                    phase.percentile(90) / 1000,
+                                    phase.percentile(99) / 1000,
+                                    phase.maxNanos.get() / 1000));
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    public void reset() {
+        for (Phase phase : phases.values()) {
+            phase.reset();
+        }
+    }
+
+    // private methods -----------------------------------------
+
+    private static ObjectName objectNameOf(String name) throws JMException {
+        return new ObjectName("study_adf:type=PhaseTimingStats,name=" +
+                              ObjectName.quote(name));
+    }
+
+    private Phase phaseOf(String phaseName) {
+        Phase newPhase = new Phase();
+        Phase phase = phases.putIfAbsent(phaseName, newPhase);
+        if (phase != null) {
+            return phase;
+        }
+        synchronized (order) {
+            order.add(phaseName);
+        }
+        return newPhase;
+    }
+
+    /**
+     * Counters and a histogram of one phase.
+     */
+    private static final class Phase {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        void record(long nanos) {
+            long v = Math.max(nanos, 0L);
+            count.incrementAndGet();
+            totalNanos.addAndGet(v);
+            long max = maxNanos.get();
+            while (v > max && !maxNanos.compareAndSet(max, v)) {
+                max = maxNanos.get();
+            }
+            histogram.record(v);
+        }
+
+        long percentile(double percentile) {
+            // the upper bound of a bucket may exceed the actual maximum
+            return Math.min(histogram.getPercentile(percentile),
+                            maxNanos.get());
+        }
+
+        void reset() {
+            count.set(0L);
+            totalNanos.set(0L);
+            maxNanos.set(0L);
+            histogram.reset();
+        }
+    }
+}
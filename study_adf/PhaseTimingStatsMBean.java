@@ -0,0 +1,19 @@
+/**
+ * JMX interface of {@link PhaseTimingStats}.
+ */
+public interface PhaseTimingStatsMBean {
+
+    String[] getPhaseNames();
+
+    long getCount(String phaseName);
+
+    long getMeanMicros(String phaseName);
+
+    long getMaxMicros(String phaseName);
+
+    long getPercentileMicros(String phaseName, double percentile);
+
+    String[] dump();
+
+    void reset();
+}
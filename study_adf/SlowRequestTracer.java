@@ -0,0 +1,411 @@
+import java.lang.management.ManagementFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Correlates the JSF phases (CustomPhaseListener) and the ADF page phases
+ * (CustomPagePhaseListener) of each request into one timeline, and keeps the
+ * slowest requests of each page (view id) with their phase breakdown.
+ * Exposed over JMX as "study_adf:type=SlowRequestTracer"; call dump() to see
+ * the slowest pages.
+ * A request is traced from the start of RESTORE_VIEW to the end of
+ * RENDER_RESPONSE (or of the phase in which the response was completed) on
+ * one thread. Timelines are pooled and reused, so a request that is not
+ * among the slowest of its page allocates nothing; a timeline is detached
+ * from the thread at the end of each request, so that the container's
+ * worker threads do not keep the application's classes loaded.
+ * Call {@link #shutdown()} when the application is stopped (see
+ * {@link PhaseListenerCleanup}).
+ * The number of requests kept per page can be set with
+ * -Dstudy_adf.slowRequestTracer.topN (default 5).
+ */
+public class SlowRequestTracer implements SlowRequestTracerMBean {
+
+    /** Sources of a phase */
+    static final int JSF = 0;
+    static final int ADF = 1;
+
+    /** Phases recorded per request; further phases are ignored */
+    private static final int MAX_PHASES = 64;
+    /** Pages tracked; requests of further pages are counted as OTHER_PAGES */
+    private static final int MAX_PAGES = 500;
+    private static final String OTHER_PAGES = "(other pages)";
+    private static final String UNKNOWN_PAGE = "(unknown)";
+    /** Timelines kept for reuse; about the number of concurrent requests */
+    private static final int MAX_FREE_TIMELINES = 1024;
+    private static final String OBJECT_NAME = "study_adf:type=SlowRequestTracer";
+
+    private static final Logger logger =
+        Logger.getLogger(SlowRequestTracer.class.getName());
+
+    private static final SlowRequestTracer instance = create();
+
+    /** Timeline of the request running on each thread, if traced */
+    private final ThreadLocal<Timeline> timelines = new ThreadLocal<Timeline>();
+    private final Queue<Timeline> freeTimelines =
+        new ConcurrentLinkedQueue<Timeline>();
+    private final ConcurrentMap<String, Page> pages =
+        new ConcurrentHashMap<String, Page>();
+    private volatile boolean enabled = true;
+    private volatile int topN =
+        Math.max(1, Integer.getInteger("study_adf.slowRequestTracer.topN", 5));
+
+    /**
+     * Get the tracer, which is registered to the platform MBeanServer when
+     * this class is loaded.
+     */
+    public static SlowRequestTracer getInstance() {
+        return instance;
+    }
+
+    /**
+     * Start the timeline of a new request on this thread, discarding a
+     * timeline that was not ended.
+     */
+    void begin() {
+        if (!enabled) {
+            return;
+        }
+        Timeline timeline = timelines.get();
+        if (timeline == null) {
+            timeline = freeTimelines.poll();
+            if (timeline == null) {
+                timeline = new Timeline();
+            }
+            timelines.set(timeline);
+        }
+        timeline.begin();
+    }
+
+    void phaseStarted(int source, int phaseId, String phaseName) {
+        Timeline timeline = timelines.get();
+        if (timeline != null) {
+            timeline.phaseStarted(source, phaseId, phaseName);
+        }
+    }
+
+    void phaseEnded(int source, int phaseId) {
+        Timeline timeline = timelines.get();
+        if (timeline != null) {
+            timeline.phaseEnded(source, phaseId);
+        }
+    }
+
+    /**
+     * End the timeline of the request on this thread, and keep it if it is
+     * among the slowest of the page.
+     */
+    void end(String viewId) {
+        Timeline timeline = timelines.get();
+        if (timeline == null) {
+            return;
+        }
+        timelines.remove();
+        long totalNanos = System.nanoTime() - timeline.startNanos;
+        pageOf((viewId == null) ? UNKNOWN_PAGE : viewId).offer(viewId,
+                                                                timeline,
+                                                                totalNanos,
+                                                                topN);
+        timeline.clear();
+        if (enabled && freeTimelines.size() < MAX_FREE_TIMELINES) {
+            freeTimelines.offer(timeline);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getTopN() {
+        return topN;
+    }
+
+    /**
+     * Set the number of requests kept per page. Pages keeping more requests
+     * are trimmed at their next slow request.
+     */
+    public void setTopN(int topN) {
+        if (topN <= 0) {
+            throw new IllegalArgumentException("bad topN: " + topN);
+        }
+        this.topN = topN;
+        for (Page page : pages.values()) {
+            page.resetThreshold();
+        }
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * @return the pages, slowest first: a summary line of each page followed
+     *         by its slowest requests
+     */
+    public String[] dump() {
+        List<String> names = new ArrayList<String>(pages.keySet());
+        final ConcurrentMap<String, Page> p = pages;
+        Collections.sort(names, new Comparator<String>() {
+            public int compare(String a, String b) {
+                Page pa = p.get(a);
+                Page pb = p.get(b);
+                long ma = (pa == null) ? 0L : pa.maxNanos.get();
+                long mb = (pb == null) ? 0L : pb.maxNanos.get();
+                return (ma < mb) ? 1 : ((ma > mb) ? -1 : a.compareTo(b));
+            }
+        });
+        List<String> lines = new ArrayList<String>();
+        for (String name : names) {
+            Page page = pages.get(name);
+            if (page != null) {
+                page.dump(name, lines);
+            }
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    /**
+     * @return the summary line and the slowest requests of the page, or an
+     *         empty array if the page has not been seen
+     */
+    public String[] dumpPage(String viewId) {
+        Page page = pages.get(viewId);
+        if (page == null) {
+            return new String[0];
+        }
+        List<String> lines = new ArrayList<String>();
+        page.dump(viewId, lines);
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    public void reset() {
+        pages.clear();
+    }
+
+    /**
+     * Stop tracing, discard the traces and unregister the MBean, so that
+     * nothing outside the application refers to its classes any more.
+     * A timeline of a request that did not reach its end (e.g. failed with
+     * an exception) stays on its worker thread until the thread's next
+     * request; it is not reachable from here.
+     */
+    public void shutdown() {
+        enabled = false;
+        timelines.remove();
+        freeTimelines.clear();
+        pages.clear();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "cannot unregister SlowRequestTracer",
+                       e);
+        }
+    }
+
+    // private methods -----------------------------------------
+
+    private SlowRequestTracer() {
+        super();
+    }
+
+    private static SlowRequestTracer create() {
+        SlowRequestTracer tracer = new SlowRequestTracer();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(tracer, objectName);
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "cannot register SlowRequestTracer", e);
+        }
+        return tracer;
+    }
+
+    private Page pageOf(String viewId) {
+        Page page = pages.get(viewId);
+        if (page != null) {
+            return page;
+        }
+        String key = (pages.size() < MAX_PAGES) ? viewId : OTHER_PAGES;
+        Page newPage = new Page();
+        page = pages.putIfAbsent(key, newPage);
+        return (page == null) ? newPage : page;
+    }
+
+    /**
+     * Phases of the request running on one thread. Returned to the pool at
+     * the end of the request.
+     */
+    private static final class Timeline {
+        private long startNanos;
+        private long startMillis;
+        private int size;
+        private final int[] sources = new int[MAX_PHASES];
+        private final int[] phaseIds = new int[MAX_PHASES];
+        private final String[] phaseNames = new String[MAX_PHASES];
+        private final long[] starts = new long[MAX_PHASES];
+        /** End time of each phase; 0 while running */
+        private final long[] ends = new long[MAX_PHASES];
+
+        void begin() {
+            clear();
+            startNanos = System.nanoTime();
+            startMillis = System.currentTimeMillis();
+        }
+
+        void clear() {
+            Arrays.fill(phaseNames, 0, size, null);
+            size = 0;
+        }
+
+        void phaseStarted(int source, int phaseId, String phaseName) {
+            if (size == MAX_PHASES) {
+                return;
+            }
+            sources[size] = source;
+            phaseIds[size] = phaseId;
+            phaseNames[size] = phaseName;
+            starts[size] = System.nanoTime();
+            ends[size] = 0L;
+            size++;
+        }
+
+        void phaseEnded(int source, int phaseId) {
+            long now = System.nanoTime();
+            for (int i = size - 1; i >= 0; i--) {
+                if (ends[i] == 0L && sources[i] == source &&
+                    phaseIds[i] == phaseId) {
+                    ends[i] = now;
+                    return;
+                }
+            }
+        }
+    }
+
+    /** A copy of the timeline of a slow request */
+    private static final class Trace {
+        private final String viewId;
+        private final long threadId;
+        private final long startMillis;
+        private final long totalNanos;
+        private final String[] phases;
+        private final long[] offsetNanos;
+        /** Duration of each phase; -1 if it did not end */
+        private final long[] durationNanos;
+
+        Trace(String viewId, Timeline t, long totalNanos) {
+            this.viewId = viewId;
+            this.threadId = Thread.currentThread().getId();
+            this.startMillis = t.startMillis;
+            this.totalNanos = totalNanos;
+            this.phases = new String[t.size];
+            this.offsetNanos = new long[t.size];
+            this.durationNanos = new long[t.size];
+            for (int i = 0; i < t.size; i++) {
+                phases[i] =
+                    (t.sources[i] == JSF) ? "JSF:" + t.phaseNames[i] :
+                    "adf:" + t.phaseIds[i] + ":" + t.phaseNames[i];
+                offsetNanos[i] = t.starts[i] - t.startNanos;
+                durationNanos[i] =
+                    (t.ends[i] == 0L) ? -1L : t.ends[i] - t.starts[i];
+            }
+        }
+
+        void dump(List<String> lines) {
+            lines.add(String.format("  %dus at %tF %<tT.%<tL [Thread:%d] %s",
+                                    totalNanos / 1000, startMillis,
+                                    threadId,
+                                    (viewId == null) ? UNKNOWN_PAGE : viewId));
+            for (int i = 0; i < phases.length; i++) {
+                lines.add(String.format("    +%dus %s %s", offsetNanos[i] / 1000,
+                                        phases[i],
+                                        (durationNanos[i] < 0) ? "(not ended)" :
+                                        durationNanos[i] / 1000 + "us"));
+            }
+        }
+    }
+
+    /**
+     * Counters and the slowest requests of one page. Requests not slower than
+     * the slowest kept ones are only counted, without locking.
+     */
+    private static final class Page {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        /** Slowest first */
+        private final LinkedList<Trace> slowest = new LinkedList<Trace>();
+        /** Duration of the fastest kept request when full; 0 otherwise */
+        private volatile long threshold = 0L;
+
+        void offer(String viewId, Timeline timeline, long nanos, int topN) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+            if (nanos <= threshold) {
+                return;
+            }
+            Trace trace = new Trace(viewId, timeline, nanos);
+            synchronized (slowest) {
+                int i = 0;
+                while (i < slowest.size() &&
+                       slowest.get(i).totalNanos >= nanos) {
+                    i++;
+                }
+                slowest.add(i, trace);
+                while (slowest.size() > topN) {
+                    slowest.removeLast();
+                }
+                threshold =
+                    (slowest.size() < topN) ? 0L : slowest.getLast().totalNanos;
+            }
+        }
+
+        void resetThreshold() {
+            synchronized (slowest) {
+                threshold = 0L;
+            }
+        }
+
+        void dump(String name, List<String> lines) {
+            long c = count.get();
+            lines.add(String.format("%s count=%d mean=%dus max=%dus", name, c,
+                                    (c == 0) ? 0L : totalNanos.get() / c / 1000,
+                                    maxNanos.get() / 1000));
+            synchronized (slowest) {
+                for (Trace trace : slowest) {
+                    trace.dump(lines);
+                }
+            }
+        }
+    }
+}
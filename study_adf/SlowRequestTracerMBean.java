@@ -0,0 +1,21 @@
+/**
+ * JMX interface of {@link SlowRequestTracer}.
+ */
+public interface SlowRequestTracerMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    int getTopN();
+
+    void setTopN(int topN);
+
+    int getPageCount();
+
+    String[] dump();
+
+    String[] dumpPage(String viewId);
+
+    void reset();
+}